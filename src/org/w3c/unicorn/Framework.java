@@ -36,6 +36,9 @@ import org.w3c.unicorn.contract.WADLUnmarshaller;
 import org.w3c.unicorn.contract.WADLUnmarshallerXPath;
 import org.w3c.unicorn.exceptions.InitializationFailedException;
 import org.w3c.unicorn.exceptions.UnknownParserException;
+import org.w3c.unicorn.input.TemporaryDocumentStore;
+import org.w3c.unicorn.request.ConnectionManager;
+import org.w3c.unicorn.request.HttpClientTransport;
 import org.w3c.unicorn.tasklist.Task;
 import org.w3c.unicorn.tasklist.TaskListUnmarshallerBeans;
 import org.w3c.unicorn.tasklist.Tasklist;
@@ -50,6 +53,7 @@ import org.w3c.unicorn.util.Property;
 import org.w3c.unicorn.util.UCNProperties;
 import org.w3c.unicorn.util.UnicornVelocityTool;
 import org.w3c.unicorn.response.Response;
+import org.w3c.unicorn.response.ResponseValidation;
 
 import com.ibm.icu.util.ULocale;
 
@@ -75,6 +79,12 @@ public class Framework {
 	 */
 	public static Map<String, Class<Response>> responseImpl;
 	
+	/**
+	 * Suffix of the keys of observers.properties overriding the response
+	 * validation policy of an observer
+	 */
+	private static final String RESPONSE_VALIDATION_SUFFIX = ".responseValidation";
+	
 	/**
 	 * Logger
 	 */
@@ -104,6 +114,9 @@ public class Framework {
 		metadataProperties = new Hashtable<ULocale, UCNProperties>();
 		mapOfObserver = new LinkedHashMap<String, Observer>();
 		responseImpl = new LinkedHashMap<String, Class<Response>>();
+		RequestExecutor.shutdown();
+		HttpClientTransport.shutdown();
+		TemporaryDocumentStore.shutdown();
 		Language.reset();
 	}
 	
@@ -201,6 +214,12 @@ public class Framework {
 				throw new InitializationFailedException("Error reading \"" + fileName + "\": " + e.getMessage());
 			}
 		}
+		
+		// HTTP connections to the observers
+		ConnectionManager.init();
+		
+		// documents published for the observers which need a URI
+		TemporaryDocumentStore.init();
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -241,6 +260,8 @@ public class Framework {
 		Properties observers = Property.getProps("observers.properties");
 		for (Object key : observers.keySet()) {
 			String observerId = key.toString();
+			if (observerId.endsWith(RESPONSE_VALIDATION_SUFFIX))
+				continue;
 			String observerContract = observers.getProperty(key.toString());
 			if (!observerContract.matches(".*\\.wadl$"))
 				observerContract += "/" + Property.get("OBSERVER_DEFAULT_FILENAME");
@@ -284,6 +305,13 @@ public class Framework {
 			obs.setMapOfInputMethod(unmarshaller.getMapOfInputMethod());
 			obs.setSupportedMimeTypes(unmarshaller.getSupportedMimeTypes());
 			obs.setIndexURI(unmarshaller.getIndexUri());
+			ResponseValidation validation = ResponseValidation.parse(observers.getProperty(observerId + RESPONSE_VALIDATION_SUFFIX));
+			if (validation == null)
+				validation = ResponseValidation.parse(unmarshaller.getResponseValidation());
+			if (validation == null)
+				validation = ResponseValidation.getDefault(responseImpl.get(obs.getResponseType()));
+			obs.setResponseValidation(validation);
+			logger.debug("> Response validation: " + validation);
 			mapOfObserver.put(new String(obs.getID()), obs);
 		}
 		if (mapOfObserver.size() == 0) {
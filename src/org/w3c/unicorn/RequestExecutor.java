@@ -0,0 +1,271 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.util.Property;
+
+/**
+ * Process-wide executor used to call the observers. It replaces the thread
+ * that was created for each request and bounds the number of concurrent
+ * observer calls. The pool is configured in unicorn.properties with the
+ * OBSERVER_POOL_* properties.
+ * 
+ * If OBSERVER_VIRTUAL_THREADS is true and the JVM supports it (Java 21+), each
+ * request runs on its own virtual thread instead, so that a large number of
+ * slow observer calls can be in flight without exhausting platform threads.
+ */
+public class RequestExecutor {
+
+	private static final Log logger = LogFactory.getLog(RequestExecutor.class);
+
+	private static ExecutorService executor;
+
+	/**
+	 * Timer used to abort the calls that exceed their deadline
+	 */
+	private static ScheduledExecutorService scheduler;
+
+	/**
+	 * Counters used when requests run on virtual threads (the thread pool
+	 * keeps its own counters)
+	 */
+	private static final AtomicInteger virtualActiveCount = new AtomicInteger();
+	private static final AtomicLong virtualCompletedCount = new AtomicLong();
+
+	/**
+	 * Submits a request to the observer pool.
+	 *
+	 * @param requestThread
+	 *            the request to run
+	 * @return a future completed when the observer has answered
+	 * @throws RejectedExecutionException
+	 *             if the pool is full and the rejection policy is abort
+	 */
+	public static CompletableFuture<Void> submit(final RequestThread requestThread) {
+		ExecutorService service = getExecutor();
+		if (service instanceof ThreadPoolExecutor)
+			return CompletableFuture.runAsync(requestThread, service);
+		return CompletableFuture.runAsync(new Runnable() {
+			public void run() {
+				virtualActiveCount.incrementAndGet();
+				try {
+					requestThread.run();
+				} finally {
+					virtualActiveCount.decrementAndGet();
+					virtualCompletedCount.incrementAndGet();
+				}
+			}
+		}, service);
+	}
+
+	/**
+	 * Returns the pool, creating it from unicorn.properties the first time.
+	 *
+	 * @return the observer pool
+	 */
+	public static synchronized ExecutorService getExecutor() {
+		if (executor == null || executor.isShutdown()) {
+			if ("true".equals(Property.get("OBSERVER_VIRTUAL_THREADS"))) {
+				executor = createVirtualThreadExecutor();
+				if (executor != null) {
+					logger.info("Observer requests will run on virtual threads");
+					return executor;
+				}
+			}
+			int coreSize = getIntProperty("OBSERVER_POOL_CORE_SIZE", 16);
+			int maxSize = Math.max(coreSize, getIntProperty("OBSERVER_POOL_MAX_SIZE", 64));
+			int queueSize = getIntProperty("OBSERVER_POOL_QUEUE_SIZE", 256);
+			long keepAlive = getIntProperty("OBSERVER_POOL_KEEP_ALIVE", 60000);
+			String policy = Property.get("OBSERVER_POOL_REJECTION_POLICY");
+
+			BlockingQueue<Runnable> queue;
+			if (queueSize < 0)
+				queue = new LinkedBlockingQueue<Runnable>();
+			else if (queueSize == 0)
+				queue = new SynchronousQueue<Runnable>();
+			else
+				queue = new ArrayBlockingQueue<Runnable>(queueSize);
+
+			executor = new ThreadPoolExecutor(coreSize, maxSize, keepAlive, TimeUnit.MILLISECONDS,
+					queue, new ObserverThreadFactory(), getRejectionHandler(policy));
+			logger.info("Observer pool created (core: " + coreSize + ", max: " + maxSize
+					+ ", queue: " + queueSize + ", rejection policy: " + policy + ")");
+		}
+		return executor;
+	}
+
+	/**
+	 * Runs a task once the given delay has elapsed. Used to enforce the
+	 * deadline of a call.
+	 * 
+	 * @param task
+	 *            the task to run
+	 * @param delay
+	 *            the delay in milliseconds
+	 * @return a future that can be used to cancel the task
+	 */
+	public static ScheduledFuture<?> schedule(Runnable task, long delay) {
+		synchronized (RequestExecutor.class) {
+			if (scheduler == null || scheduler.isShutdown()) {
+				scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "unicorn-deadline");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+		}
+		return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the pool. Running requests are allowed to finish, a new pool
+	 * will be created on next use.
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return true if observer requests run on virtual threads
+	 */
+	public static boolean isVirtual() {
+		return !(getExecutor() instanceof ThreadPoolExecutor);
+	}
+
+	/**
+	 * @return the number of requests waiting for a thread
+	 */
+	public static int getQueueSize() {
+		ExecutorService service = getExecutor();
+		if (service instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) service).getQueue().size();
+		return 0;
+	}
+
+	/**
+	 * @return the number of threads currently calling an observer
+	 */
+	public static int getActiveCount() {
+		ExecutorService service = getExecutor();
+		if (service instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) service).getActiveCount();
+		return virtualActiveCount.get();
+	}
+
+	/**
+	 * @return the current number of threads in the pool
+	 */
+	public static int getPoolSize() {
+		ExecutorService service = getExecutor();
+		if (service instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) service).getPoolSize();
+		return virtualActiveCount.get();
+	}
+
+	/**
+	 * @return the largest number of threads that have ever been in the pool
+	 */
+	public static int getLargestPoolSize() {
+		ExecutorService service = getExecutor();
+		if (service instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) service).getLargestPoolSize();
+		return -1;
+	}
+
+	/**
+	 * @return the number of observer requests executed so far
+	 */
+	public static long getCompletedTaskCount() {
+		ExecutorService service = getExecutor();
+		if (service instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor) service).getCompletedTaskCount();
+		return virtualCompletedCount.get();
+	}
+
+	public static String getStatistics() {
+		return "active: " + getActiveCount() + ", queued: " + getQueueSize()
+			+ ", pool size: " + getPoolSize() + ", largest pool size: " + getLargestPoolSize()
+			+ ", completed: " + getCompletedTaskCount();
+	}
+
+	/**
+	 * Creates an executor starting a new virtual thread for each task. It is
+	 * looked up by reflection so that Unicorn still runs on JVMs without
+	 * virtual threads.
+	 * 
+	 * @return the executor or null if virtual threads are not available
+	 */
+	private static ExecutorService createVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException e) {
+			logger.warn("OBSERVER_VIRTUAL_THREADS is set but virtual threads are not supported by this JVM (" 
+					+ System.getProperty("java.version") + "). The thread pool is used instead.");
+		} catch (Exception e) {
+			logger.error("Unable to create the virtual thread executor. The thread pool is used instead.", e);
+		}
+		return null;
+	}
+
+	private static RejectedExecutionHandler getRejectionHandler(String policy) {
+		if ("abort".equalsIgnoreCase(policy))
+			return new ThreadPoolExecutor.AbortPolicy();
+		if (policy != null && !"caller_runs".equalsIgnoreCase(policy))
+			logger.warn("Unknown OBSERVER_POOL_REJECTION_POLICY: " + policy + ". caller_runs is used instead.");
+		return new ThreadPoolExecutor.CallerRunsPolicy();
+	}
+
+	private static int getIntProperty(String key, int defaultValue) {
+		String value = Property.get(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value for " + key + ": " + value + ". Using default value: " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	private static class ObserverThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "unicorn-observer-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -3,6 +3,9 @@
 package org.w3c.unicorn;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -12,12 +15,12 @@ import org.w3c.unicorn.response.Response;
 import org.w3c.unicorn.util.Message;
 
 /**
- * Thread executing a request
+ * Task executing a request, run by the observer pool (see RequestExecutor)
  * 
  * @author Damien Leroy
  * 
  */
-class RequestThread extends Thread {
+class RequestThread implements Runnable {
 	/**
 	 * Used for complex logging purpose
 	 */
@@ -36,6 +39,11 @@ class RequestThread extends Thread {
 	private String obsID;
 	
 	private ArrayList<Message> messages;
+	
+	/**
+	 * True once the request has been aborted, possibly before it started
+	 */
+	private volatile boolean aborted = false;
 
 	/**
 	 * Initialize the thread by filling the properties
@@ -58,10 +66,11 @@ class RequestThread extends Thread {
 	}
 
 	/**
-	 * Allow to launch the thread
+	 * Allow to launch the request
 	 */
-	@Override
 	public void run() {
+		if (aborted)
+			return;
 		try {
 			aResponse = this.aRequest.doRequest();
 			aResponse.setObserverId(obsID);
@@ -71,6 +80,40 @@ class RequestThread extends Thread {
 		}
 	}
 
+	/**
+	 * Launches the request without blocking, when the transport supports it
+	 * (see Request.doRequestAsync)
+	 * 
+	 * @return a future completed once the response is available
+	 */
+	public CompletableFuture<Void> runAsync() {
+		if (aborted)
+			return CompletableFuture.completedFuture(null);
+		return aRequest.doRequestAsync().handle(new BiFunction<Response, Throwable, Void>() {
+			public Void apply(Response response, Throwable t) {
+				if (t == null) {
+					aResponse = response;
+					aResponse.setObserverId(obsID);
+					return null;
+				}
+				Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+				if (!(cause instanceof UnicornException))
+					throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+				messages.add(((UnicornException) cause).getUnicornMessage());
+				logger.error("Observer request failed: \n\t Request: " +  aRequest.getInputMethod().toString() + " - " + aRequest.toString(), cause);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Aborts the request if it is still waiting for the observer
+	 */
+	public void abort() {
+		aborted = true;
+		aRequest.abort();
+	}
+
 	public String getObsID() {
 		return obsID;
 	}
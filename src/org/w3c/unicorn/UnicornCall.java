@@ -6,30 +6,48 @@ package org.w3c.unicorn;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.activation.MimeType;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.w3c.unicorn.contract.CallParameter;
 import org.w3c.unicorn.contract.EnumInputMethod;
 import org.w3c.unicorn.contract.InputMethod;
 import org.w3c.unicorn.contract.Observer;
 import org.w3c.unicorn.exceptions.UnicornException;
 import org.w3c.unicorn.input.*;
+import org.w3c.unicorn.input.DocumentContent.DocumentTooLargeException;
+import org.w3c.unicorn.request.ConnectionManager;
+import org.w3c.unicorn.request.HttpClientTransport;
 import org.w3c.unicorn.request.Request;
 import org.w3c.unicorn.request.RequestList;
 import org.w3c.unicorn.response.Response;
+import org.w3c.unicorn.response.ResponseValidation;
+import org.w3c.unicorn.tasklist.ExecutionPlan;
+import org.w3c.unicorn.tasklist.ExecutionPlan.ParameterPlan;
 import org.w3c.unicorn.tasklist.Group;
 import org.w3c.unicorn.tasklist.Task;
 import org.w3c.unicorn.tasklist.parameters.Mapping;
-import org.w3c.unicorn.tasklist.parameters.Parameter;
-import org.w3c.unicorn.tasklist.parameters.Value;
-import org.w3c.unicorn.tasklisttree.TLTExec;
 import org.w3c.unicorn.tasklisttree.TLTIf;
 import org.w3c.unicorn.tasklisttree.TLTNode;
 import org.w3c.unicorn.util.Message;
@@ -68,6 +86,39 @@ public class UnicornCall {
 	private ArrayList<Message> messages;
 
 	private List<InputModule> inputModules;
+	
+	/**
+	 * Input modules converted from the input of the call, shared by all the
+	 * observers using the same input method
+	 */
+	private Map<EnumInputMethod, InputModule> mapOfConvertedInputModule;
+	
+	/**
+	 * Deadline requested by the client in milliseconds, 0 if none
+	 */
+	private long requestedDeadline;
+	
+	/**
+	 * True once the deadline of the call has expired
+	 */
+	private volatile boolean expired;
+	
+	/**
+	 * True if only the status and the message counts of the responses are
+	 * needed, as for HEAD requests
+	 */
+	private boolean countsOnly;
+	
+	/**
+	 * Observer requests in progress, aborted if the deadline expires
+	 */
+	private Map<RequestThread, CompletableFuture<Throwable>> pendingRequests;
+	
+	/**
+	 * Future of each observer sent during the call, completed when its
+	 * response is collected
+	 */
+	private Map<String, CompletableFuture<Void>> mapOfObserverFuture;
 
 	/**
 	 * Creates a new UnicornCall.
@@ -75,9 +126,13 @@ public class UnicornCall {
 	public UnicornCall() {
 		logger.trace("Constructor()");
 		mapOfStringParameter = new LinkedHashMap<String, String[]>();
-		mapOfResponse = new LinkedHashMap<String, Response>();
+		// filled concurrently by the requests and read by the XPath conditions
+		mapOfResponse = Collections.synchronizedMap(new LinkedHashMap<String, Response>());
 		messages = new ArrayList<Message>();
 		inputModules = new ArrayList<InputModule>();
+		mapOfConvertedInputModule = new EnumMap<EnumInputMethod, InputModule>(EnumInputMethod.class);
+		pendingRequests = new ConcurrentHashMap<RequestThread, CompletableFuture<Throwable>>();
+		mapOfObserverFuture = new ConcurrentHashMap<String, CompletableFuture<Void>>();
 	}
 
 	
@@ -86,47 +141,219 @@ public class UnicornCall {
 	}
 	
 	/**
-	 * Execute the task aTask
+	 * Execute the task aTask and wait for all the observations to be done
 	 * 
 	 * @throws Exception
 	 */
 	public void doTask() throws UnicornException {
-		logger.trace("doTask.");
+		waitFor(doTaskAsync());
+	}
+
+	/**
+	 * Execute the task aTask without blocking the calling thread. Each
+	 * observer request runs on the observer pool, and the conditions of a node
+	 * are evaluated as soon as all the requests of this node have completed.
+	 * If the call has a deadline, the requests still running when it expires
+	 * are aborted and the call completes with the responses received so far.
+	 * 
+	 * @return a future completed with this call once all the observations are
+	 *         done, or completed exceptionally with a UnicornException
+	 */
+	public CompletableFuture<UnicornCall> doTaskAsync() {
+		logger.trace("doTaskAsync.");
 		logger.debug("String task id : " + aTask.getID() + ".");
 		logger.debug("EnumInputMethod : " + inputParameter.getInputMethod() + ".");
 		logger.debug("Document name : " + inputParameter.getDocumentName() + ".");
 		logger.debug("Map of string parameter : " + mapOfStringParameter + ".");
 		
 		MimeType aMimeType = inputParameter.getMimeType();
-		if (aMimeType != null && !aTask.getSupportedMimeTypes().contains(aMimeType.toString()))
-			throw new UnicornException(Message.ERROR, "$message_unsupported_mime_type", null, aMimeType.toString());
+		if (aMimeType != null && !aTask.getSupportedMimeTypes().contains(aMimeType.toString())) {
+			CompletableFuture<UnicornCall> failed = new CompletableFuture<UnicornCall>();
+			failed.completeExceptionally(new UnicornException(Message.ERROR, "$message_unsupported_mime_type", null, aMimeType.toString()));
+			return failed;
+		}
+		
+		final long deadline = getDeadline();
+		ScheduledFuture<?> timer = null;
+		if (deadline > 0) {
+			logger.debug("Deadline : " + deadline + "ms.");
+			timer = RequestExecutor.schedule(new Runnable() {
+				public void run() {
+					expire(deadline);
+				}
+			}, deadline);
+		}
 		
-		doNode(inputParameter, aTask.getTree());
+		final UnicornCall call = this;
+		final ScheduledFuture<?> deadlineTimer = timer;
+		return doNode(inputParameter, aTask.getTree()).handle(new BiFunction<Void, Throwable, UnicornCall>() {
+			public UnicornCall apply(Void v, Throwable t) {
+				if (deadlineTimer != null)
+					deadlineTimer.cancel(false);
+				if (t != null)
+					throw t instanceof CompletionException ? (CompletionException) t : new CompletionException(t);
+				return call;
+			}
+		});
+	}
+	
+	/**
+	 * Returns the deadline of this call: the deadline of the task, or
+	 * OBSERVATION_DEADLINE if the task has none, shortened by the deadline
+	 * requested by the client.
+	 * 
+	 * @return the deadline in milliseconds, 0 if the call has no deadline
+	 */
+	public long getDeadline() {
+		long deadline = aTask.getDeadline();
+		if (deadline <= 0 && Property.get("OBSERVATION_DEADLINE") != null) {
+			try {
+				deadline = Property.parseDuration(Property.get("OBSERVATION_DEADLINE"));
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid OBSERVATION_DEADLINE: " + Property.get("OBSERVATION_DEADLINE"));
+			}
+		}
+		if (requestedDeadline > 0 && (deadline <= 0 || requestedDeadline < deadline))
+			deadline = requestedDeadline;
+		return deadline;
+	}
+	
+	/**
+	 * Called when the deadline of the call expires: no further request is sent
+	 * and the requests in progress are aborted.
+	 */
+	private void expire(long deadline) {
+		expired = true;
+		logger.warn("Deadline of " + deadline + "ms expired for task " + aTask.getID() + " on " 
+				+ inputParameter.getDocumentName() + ", aborting " + pendingRequests.size() + " request(s)");
+		for (Map.Entry<RequestThread, CompletableFuture<Throwable>> entry : pendingRequests.entrySet())
+			abortRequest(entry.getKey(), entry.getValue());
+	}
+	
+	private void abortRequest(RequestThread thread, CompletableFuture<Throwable> future) {
+		// complete the future first so that the failure caused by abort() is ignored
+		if (future.complete(new TimeoutException()))
+			thread.abort();
+	}
+	
+	/**
+	 * Waits for a call started with doTaskAsync to complete.
+	 * 
+	 * @param future
+	 *            the future returned by doTaskAsync
+	 * @return the completed call
+	 * @throws UnicornException
+	 *             if the observation failed or the thread was interrupted
+	 */
+	public static UnicornCall waitFor(CompletableFuture<UnicornCall> future) throws UnicornException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw new UnicornException(new Message(e));
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UnicornException)
+				throw (UnicornException) e.getCause();
+			if (e.getCause() instanceof Exception)
+				throw new UnicornException(new Message((Exception) e.getCause()));
+			throw new UnicornException(new Message(e));
+		}
 	}
 
 	/**
 	 * Main function called to do the recursion over the Task tree to launch the
-	 * requests
+	 * requests. The ifs which only depend on the input are checked before the
+	 * requests are sent, so that the observers of their selected branches are
+	 * called together with the ones of the node. Each other if is checked as
+	 * soon as the observers it refers to have answered, independently of the
+	 * other ifs and requests.
 	 * 
 	 * @param inputParameter
 	 *            InputParameter used for the requests
 	 * @param node
 	 *            the current node that we're parsing in the Task tree
-	 * @throws Exception
-	 *             raised from generateRequestList and doRequest
-	 */
-	private void doNode(InputParameter inputParameter, TLTNode node) throws UnicornException {
-		if (node != null) {
-			RequestList aRequestList = generateRequestList(inputParameter, mapOfStringParameter, node);
-			// send requests to observer
-			doRequests(aRequestList);
-			// browse the conditions to do the connection
-			for (TLTIf iF : node.getIfList()) {
-				if (iF.check(this)) {
-					doNode(inputParameter, iF.getIfOk());
-				} else {
-					doNode(inputParameter, iF.getIfNotOk());
+	 * @return a future completed when the requests of this node and of its
+	 *         selected sub-nodes are done
+	 */
+	private CompletableFuture<Void> doNode(final InputParameter inputParameter, TLTNode node) {
+		if (node == null || expired)
+			return CompletableFuture.completedFuture(null);
+		List<TLTNode> nodes = new ArrayList<TLTNode>();
+		List<TLTIf> ifList = new ArrayList<TLTIf>();
+		try {
+			collectNodes(node, nodes, ifList);
+		} catch (UnicornException e) {
+			CompletableFuture<Void> failed = new CompletableFuture<Void>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+		RequestList aRequestList = generateRequestList(inputParameter, mapOfStringParameter, nodes);
+		// send requests to observer
+		Map<String, CompletableFuture<Void>> mapOfFuture = doRequests(aRequestList);
+		synchronized (mapOfObserverFuture) {
+			for (Map.Entry<String, CompletableFuture<Void>> entry : mapOfFuture.entrySet()) {
+				CompletableFuture<Void> previous = mapOfObserverFuture.get(entry.getKey());
+				if (previous == null)
+					mapOfObserverFuture.put(entry.getKey(), entry.getValue());
+				else
+					mapOfObserverFuture.put(entry.getKey(), CompletableFuture.allOf(previous, entry.getValue()));
+			}
+		}
+		
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(mapOfFuture.values());
+		// browse the conditions to do the connection
+		for (final TLTIf iF : ifList) {
+			// wait for the observers of the condition sent anywhere in the
+			// call, as branches of other conditions may still be running
+			List<CompletableFuture<Void>> dependencies = new ArrayList<CompletableFuture<Void>>();
+			for (Observer aObserver : iF.getResponseObservers()) {
+				CompletableFuture<Void> future = mapOfObserverFuture.get(aObserver.getID());
+				if (future != null)
+					dependencies.add(future);
+			}
+			futures.add(allOf(dependencies).thenCompose(new Function<Void, CompletionStage<Void>>() {
+				public CompletionStage<Void> apply(Void v) {
+					return doIf(inputParameter, iF);
 				}
+			}));
+		}
+		return allOf(futures);
+	}
+	
+	/**
+	 * Checks an if and runs its selected branch
+	 */
+	private CompletableFuture<Void> doIf(InputParameter inputParameter, TLTIf iF) {
+		try {
+			if (iF.check(this)) {
+				return doNode(inputParameter, iF.getIfOk());
+			} else {
+				return doNode(inputParameter, iF.getIfNotOk());
+			}
+		} catch (UnicornException e) {
+			throw new CompletionException(e);
+		}
+	}
+	
+	private static CompletableFuture<Void> allOf(List<CompletableFuture<Void>> futures) {
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+	}
+	
+	/**
+	 * Adds node to nodes, as well as the selected branches of its ifs which do
+	 * not depend on the responses. The other ifs are added to ifList.
+	 */
+	private void collectNodes(TLTNode node, List<TLTNode> nodes, List<TLTIf> ifList) throws UnicornException {
+		if (node == null)
+			return;
+		nodes.add(node);
+		for (TLTIf iF : node.getIfList()) {
+			if (iF.dependsOnResponses()) {
+				ifList.add(iF);
+			} else if (iF.check(this)) {
+				collectNodes(iF.getIfOk(), nodes, ifList);
+			} else {
+				collectNodes(iF.getIfNotOk(), nodes, ifList);
 			}
 		}
 	}
@@ -138,43 +365,62 @@ public class UnicornCall {
 	 *            Input factory for the parameter
 	 * @param mapOfArrayUseParameter
 	 *            array of the parameter
-	 * @param node
-	 *            the current node that we are parsing
+	 * @param nodes
+	 *            the nodes whose observers are called together
 	 * @return the list of the request for the call
 	 * @throws Exception
 	 *             error occured during the process
 	 */
 	private RequestList generateRequestList(InputParameter inputParameter,
-			Map<String, String[]> mapOfArrayUseParameter, TLTNode node) {
+			Map<String, String[]> mapOfArrayUseParameter, List<TLTNode> nodes) {
 
 		MimeType aMimeType = inputParameter.getMimeType();
 		EnumInputMethod aEnumInputMethod = inputParameter.getInputMethod();
+		ExecutionPlan plan = aTask.getExecutionPlan();
+		
+		// Get value of ucn_lang parameter to associate it with parameter
+		// lang of the observer (if it has one).
+		// ucn_lang is defined in forms of index templates
+		// (xx_index.html.vm)
+		String[] valOfUcnLang = this.mapOfStringParameter.get(Property
+				.get("UNICORN_PARAMETER_PREFIX")
+				+ "lang");
 		
 		RequestList aRequestList = new RequestList(sLang);
-		// Iterate over all observation of this task to build a basic
-		// request list with only the url of observer and input parameter
-		for (Observer aObserver : createExecList(node).values()) {
-			String sObserverID = aObserver.getID();
-			// add only observer who handle the current mimetype
-			if (!aObserver.canHandleMimeType(aMimeType)) {
-				logger.debug("Observer " + sObserverID + " does not handle mime type " + aMimeType.toString());
-				continue;
+		// Iterate over the observers of this node which handle the current
+		// mimetype to build a basic request list with only the url of
+		// observer and input parameter
+		List<Observer> observers = new ArrayList<Observer>();
+		for (TLTNode node : nodes) {
+			for (Observer aObserver : plan.getObservers(node, aMimeType)) {
+				// an observer is called once even if several branches use it
+				if (!observers.contains(aObserver))
+					observers.add(aObserver);
 			}
+		}
+		for (Observer aObserver : observers) {
 			// the best available observation method
-			final InputMethod aInputMethod = aObserver
-					.getBestInputMethod(aEnumInputMethod);
+			final InputMethod aInputMethod = plan.getBestInputMethod(aObserver, aEnumInputMethod);
 			
 			if (aInputMethod.getMethod() != inputParameter.getInputMethod()) {
-				messages.add(new Message(Message.WARNING, "$message_input_changed", "$message_input_changed_long", aObserver.getName(sLang), inputParameter.getInputMethod().toString().toLowerCase()));
+				synchronized (messages) {
+					messages.add(new Message(Message.WARNING, "$message_input_changed", "$message_input_changed_long", aObserver.getName(sLang), inputParameter.getInputMethod().toString().toLowerCase()));
+				}
 			}
 			
 			InputModule inputModule = createInputModule(aInputMethod, inputParameter.getInputModule());
-			inputModules.add(inputModule);
+			if (inputModule == null) {
+				logger.warn("No input module for observer " + aObserver.getID() + ", this observer is skipped");
+				continue;
+			}
+			synchronized (inputModules) {
+				if (!inputModules.contains(inputModule))
+					inputModules.add(inputModule);
+			}
 			
 			// create a new request with input parameter
 			final Request aRequest = Request.createRequest(
 			// the corresponding best input module
-					//InputFactory.getInputModule(aInputMethod.getMethod()),
 					inputModule,
 					// URL of the service to call
 					aInputMethod.getCallMethod().getURL().toString(),
@@ -186,18 +432,8 @@ public class UnicornCall {
 					// Response format
 					aObserver.getResponseType(),
 					aObserver.getID());
-
-			// add this request to request list
-			//aRequestList.addRequest(aRequest, aObserver.getID());
-
-
-			// Get value of ucn_lang parameter to associate it with parameter
-			// lang of the observer (if it has one).
-			// ucn_lang is defined in forms of index templates
-			// (xx_index.html.vm)
-			String[] valOfUcnLang = this.mapOfStringParameter.get(Property
-					.get("UNICORN_PARAMETER_PREFIX")
-					+ "lang");
+			aRequest.setRequestEncoding(aInputMethod.getCallMethod().getRequestEncoding());
+			aRequest.setCountsOnly(countsOnly);
 
 			// Get name of the lang parameter (defined in RDF file)
 			String observerParamLangName = aObserver.getParamLangName();
@@ -212,166 +448,259 @@ public class UnicornCall {
 			aRequestList.addRequest(aRequest, aObserver.getID());
 
 			// Add fixed parameter
-			for (final CallParameter aCallParameter : aObserver.getCallMethod(aInputMethod.getMethod())
-					.getListOfCallParameter()) {
-				if (aCallParameter.isRequired() && aCallParameter.isFixed()) {
-					aRequest.addParameter(aCallParameter.getName(),
-							aCallParameter.getFixed());
-				}
+			for (final Mapping aMapping : plan.getFixedParameters(aObserver, aInputMethod.getMethod())) {
+				aRequest.addParameter(aMapping.getParam(), aMapping.getValue());
 			}
 
-		} // foreach this.aTask.getMapOfObservation().values()
+		} // foreach observers
 
 		// Iterate over all parameter of this task to add at the
 		// request list the parameter input by the framework client
-		for (final String sTaskParameterName : this.aTask.getMapOfParameter()
-				.keySet()) {
-			final Parameter aTaskParameter = this.aTask.getMapOfParameter()
-					.get(sTaskParameterName);
+		for (final ParameterPlan aParameterPlan : plan.getParameters()) {
+			final String sTaskParameterName = aParameterPlan.getName();
 
 			// check if this parameter have a given value
 			String[] tStringUseParameterValue = mapOfArrayUseParameter
 					.get(sTaskParameterName);
 			if (null == tStringUseParameterValue) {
-
 				// check if this parameter have a default value
-				final Map<String, Value> mapOfDefaultValue = aTaskParameter
-						.getMapOfDefaultValue();
-				if (null == mapOfDefaultValue || 0 == mapOfDefaultValue.size()) {
+				tStringUseParameterValue = aParameterPlan.getDefaultValues();
+				if (null == tStringUseParameterValue) {
 					logger.warn("Parameter " + sTaskParameterName
 							+ " has no value intput and no default value.");
 					continue;
 				}
-				tStringUseParameterValue = new String[mapOfDefaultValue
-						.keySet().size()];
-				int i = 0;
-				for (final String s : mapOfDefaultValue.keySet()) {
-					tStringUseParameterValue[i++] = s;
-				}
 			}
 
-			final Map<String, Value> mapOfValue = aTaskParameter
-					.getMapOfValue();
 			// if there no value the parameter allow all string
-			if (null == mapOfValue) {
-				final Map<String, Value> mapOfDefaultValue = aTaskParameter
-						.getMapOfDefaultValue();
-				// Parameter allow all string !
-				final Value aValue = mapOfDefaultValue.values().iterator()
-						.next();
-				final Map<String, List<Mapping>> mapOfMapping = aValue
-						.getMapOfMapping();
-
-				for (final String sObserverName : mapOfMapping.keySet()) {
-
-					final Request aRequest = aRequestList
-							.getRequest(sObserverName);
-
-					for (final Mapping aMapping : mapOfMapping
-							.get(sObserverName)) {
-						final String sValue = aMapping.getValue();
-						// check
-						if (null == sValue || "".equals(sValue)) {
-							aRequest.addParameter(aMapping.getParam(),
-									tStringUseParameterValue[0]);
-							continue;
-						}
-						aRequest.addParameter(aMapping.getParam(), sValue);
-					}
-
-				} // foreach mapOfMapping.keySet()
-
+			if (aParameterPlan.isFree()) {
+				addParameters(aRequestList, aParameterPlan.getFreeMappings(), tStringUseParameterValue[0]);
 				continue;
 			}
 
 			for (final String sUseParameterValue : tStringUseParameterValue) {
-				final Value aValue = mapOfValue.get(sUseParameterValue);
-				
-				if (aValue == null) {
+				final Map<String, List<Mapping>> mapOfMapping = aParameterPlan.getMappings(sUseParameterValue);
+				if (mapOfMapping == null) {
 					logger.warn("unknown mapping for parameter value: " + sUseParameterValue);
 					continue;
 				}
-				
-				final Map<String, List<Mapping>> mapOfMapping = aValue
-						.getMapOfMapping();
-
-				for (final String sObserverName : mapOfMapping.keySet()) {
-
-					if (aRequestList.getRequest(sObserverName) != null) {
-						final Request aRequest = aRequestList
-								.getRequest(sObserverName);
-						for (final Mapping aMapping : mapOfMapping
-								.get(sObserverName)) {
-
-							final String sValue = aMapping.getValue();
-							// check
-							if (null == sValue || "".equals(sValue)) {
-								aRequest.addParameter(aMapping.getParam(),
-										sUseParameterValue);
-								continue;
-							}
-							aRequest.addParameter(aMapping.getParam(), aMapping
-									.getValue());
-						}
-					}
-				} // foreach mapOfMapping.keySet()
+				addParameters(aRequestList, mapOfMapping, sUseParameterValue);
 			} // foreach sArrayParameterValue
 
-		} // foreach this.parameters.values()
+		} // foreach plan.getParameters()
 
 		return aRequestList;
 	}
 	
 	/**
-	 * Creates the map of all the Observer to call in the current node
+	 * Adds mapped parameters to the requests of the observers they map to
 	 * 
-	 * @param node
-	 *            the current node of the Task tree we are parsing
+	 * @param aRequestList
+	 *            the requests
+	 * @param mapOfMapping
+	 *            the mappings by observer
+	 * @param sValue
+	 *            the value used for the mappings without value
 	 */
-	private Map<String, Observer> createExecList(TLTNode node) {
-		Map<String, Observer> mapOfCurrentNodeObserver = new LinkedHashMap<String, Observer>();
-		for (TLTExec exec : node.getExecutionList()) {
-			mapOfCurrentNodeObserver.put(exec.getValue(), exec.getObserver());
+	private void addParameters(RequestList aRequestList, Map<String, List<Mapping>> mapOfMapping, String sValue) {
+		for (final Map.Entry<String, List<Mapping>> entry : mapOfMapping.entrySet()) {
+			final Request aRequest = aRequestList.getRequest(entry.getKey());
+			if (aRequest == null)
+				continue;
+			for (final Mapping aMapping : entry.getValue()) {
+				if (aMapping.getValue() == null)
+					aRequest.addParameter(aMapping.getParam(), sValue);
+				else
+					aRequest.addParameter(aMapping.getParam(), aMapping.getValue());
+			}
 		}
-		return mapOfCurrentNodeObserver;
 	}
 	
 	/**
-	 * Execute the request depending on the priority
+	 * Sends the requests to the observers. The response and the messages of
+	 * each request are collected as soon as it completes.
 	 * 
-	 * @param aTPriority
-	 *            priority of the request
-	 * @throws IOException
-	 *             Input/Output error
+	 * The observers of a firstPassed output group are only useful until one
+	 * of them passes. Depending on FIRSTPASSED_EXECUTION, they are all called
+	 * (parallel), called one after the other until one passes (sequential),
+	 * or called together and cancelled once a higher priority one passes
+	 * (cancel). Observers used by a condition are always called.
+	 * 
+	 * @param requestList
+	 *            the requests to send
+	 * @return a future by observer, completed when its response is collected
 	 */
-	private void doRequests(RequestList requestList) {
+	private Map<String, CompletableFuture<Void>> doRequests(RequestList requestList) {
 		logger.trace("doRequests");
 
 		final Map<String, Request> requests = requestList.getRequestMap();
-		// Creation of the thread list
-		ArrayList<RequestThread> threadsList = new ArrayList<RequestThread>();
-
-		for (final String obsID : requests.keySet()) {
+		final Map<String, RequestThread> threads = new LinkedHashMap<String, RequestThread>();
+		for (final String obsID : requests.keySet())
+			threads.put(obsID, new RequestThread(requests.get(obsID), obsID));
+		
+		String mode = Property.get("FIRSTPASSED_EXECUTION");
+		boolean sequential = "sequential".equals(mode);
+		boolean cancel = "cancel".equals(mode);
+		List<List<String>> groups = new ArrayList<List<String>>();
+		Set<String> deferred = new HashSet<String>();
+		if (sequential || cancel) {
+			ExecutionPlan plan = aTask.getExecutionPlan();
+			for (List<String> group : plan.getFirstPassedGroups()) {
+				List<String> members = new ArrayList<String>();
+				for (String obsID : group) {
+					if (threads.containsKey(obsID) && !plan.isConditionObserver(obsID))
+						members.add(obsID);
+				}
+				if (members.size() > 1) {
+					groups.add(members);
+					if (sequential)
+						deferred.addAll(members.subList(1, members.size()));
+				}
+			}
+		}
+		
+		Map<String, CompletableFuture<Void>> mapOfFuture = new LinkedHashMap<String, CompletableFuture<Void>>();
+		for (final String obsID : threads.keySet()) {
 			// send request to observer
-			threadsList.add(new RequestThread(requests.get(obsID), obsID));
-			logger.debug("Request " + requests.get(obsID) + " added to threadsList");
+			if (!deferred.contains(obsID))
+				mapOfFuture.put(obsID, submitRequest(threads.get(obsID)));
 		}
-		for (RequestThread thread : threadsList) {
-			thread.start();
-			logger.debug("Request " + thread.getObsID() + " started");
+		
+		for (final List<String> members : groups) {
+			for (int i = 1; i < members.size(); i++) {
+				final List<String> previousMembers = members.subList(0, i);
+				final RequestThread thread = threads.get(members.get(i));
+				if (sequential) {
+					// call this observer once the previous one has answered,
+					// unless one of the previous ones passed
+					mapOfFuture.put(thread.getObsID(), mapOfFuture.get(members.get(i - 1)).thenCompose(new Function<Void, CompletionStage<Void>>() {
+						public CompletionStage<Void> apply(Void v) {
+							if (hasPassed(previousMembers)) {
+								logger.debug("Request " + thread.getObsID() + " skipped: an observer of its firstPassed group passed");
+								return CompletableFuture.completedFuture(null);
+							}
+							return submitRequest(thread);
+						}
+					}));
+				} else {
+					// cancel this observer as soon as one of the previous ones passes
+					for (final String previous : previousMembers) {
+						mapOfFuture.get(previous).thenRun(new Runnable() {
+							public void run() {
+								if (hasPassed(Collections.singletonList(previous)))
+									cancelRequest(thread);
+							}
+						});
+					}
+				}
+			}
 		}
-		for (RequestThread thread : threadsList) {
-			try {
-				thread.join();
+		return mapOfFuture;
+	}
+	
+	/**
+	 * Submits a request to the observer pool.
+	 * 
+	 * @param thread
+	 *            the request
+	 * @return a future completed when the response of the request is collected
+	 */
+	private CompletableFuture<Void> submitRequest(final RequestThread thread) {
+		// registered before the request is submitted: when the pool is full,
+		// the caller_runs policy runs the request in this thread before
+		// submit() returns, and the deadline must be able to abort it
+		final CompletableFuture<Throwable> future = new CompletableFuture<Throwable>();
+		pendingRequests.put(thread, future);
+		if (expired)
+			abortRequest(thread, future);
+		CompletableFuture<Void> collected = future.thenAccept(new Consumer<Throwable>() {
+			public void accept(Throwable failure) {
+				collect(thread, failure);
+			}
+		});
+		try {
+			// a failed request must not fail the whole call
+			CompletableFuture<Void> request = HttpClientTransport.isEnabled() ? thread.runAsync() : RequestExecutor.submit(thread);
+			request.handle(new BiFunction<Void, Throwable, Void>() {
+				public Void apply(Void v, Throwable t) {
+					future.complete(t);
+					return null;
+				}
+			});
+			logger.debug("Request " + thread.getObsID() + " submitted");
+		} catch (RejectedExecutionException e) {
+			// only with the abort policy
+			synchronized (messages) {
+				messages.add(new Message(Message.ERROR, "$message_observer_pool_full", null, getObserverName(thread.getObsID(), getLang())));
+			}
+			logger.error("Observer pool is full, request " + thread.getObsID() + " rejected (" + RequestExecutor.getStatistics() + ")");
+			future.complete(new CancellationException());
+		}
+		return collected;
+	}
+	
+	/**
+	 * Cancels a request whose response is not needed anymore
+	 */
+	private void cancelRequest(RequestThread thread) {
+		CompletableFuture<Throwable> future = pendingRequests.get(thread);
+		if (future != null && future.complete(new CancellationException())) {
+			logger.debug("Request " + thread.getObsID() + " cancelled: an observer of its firstPassed group passed");
+			thread.abort();
+		}
+	}
+	
+	/**
+	 * @return true if one of the observers has answered with a passed response
+	 */
+	private boolean hasPassed(List<String> observers) {
+		for (String obsID : observers) {
+			Response response = mapOfResponse.get(obsID);
+			if (response != null && response.getStatus() == Response.PASSED)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Collects the response and the messages of a completed request
+	 * 
+	 * @param thread
+	 *            the request
+	 * @param failure
+	 *            the exception thrown by the request, or null
+	 */
+	private void collect(RequestThread thread, Throwable failure) {
+		pendingRequests.remove(thread);
+		if (failure == null && thread.getResponse() != null)
+			mapOfResponse.put(thread.getObsID(), thread.getResponse());
+		if (failure instanceof CancellationException)
+			return;
+		synchronized (messages) {
+			if (failure instanceof TimeoutException) {
+				messages.add(new Message(Message.ERROR, "$message_observer_deadline", null, getObserverName(thread.getObsID(), getLang())));
+				logger.warn("Observer " + thread.getObsID() + " did not answer before the deadline");
+			} else if (failure == null) {
 				messages.addAll(thread.getMessages());
-				if (thread.getResponse() != null)
-					mapOfResponse.put(thread.getObsID(), thread.getResponse());
 				logger.debug("Request " + thread.getObsID() + " terminated");
-			} catch (InterruptedException e) {
-				messages.add(new Message(e));
-				logger.error(e.getMessage(), e);
+			} else {
+				if (failure instanceof CompletionException && failure.getCause() != null)
+					failure = failure.getCause();
+				if (failure instanceof Exception)
+					messages.add(new Message((Exception) failure));
+				else
+					messages.add(new Message(new ExecutionException(failure)));
+				logger.error("Observer request failed: " + thread.getObsID(), failure);
 			}
 		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Observer pool: " + RequestExecutor.getStatistics());
+			logger.debug("Response validation: " + ResponseValidation.getStatistics());
+			if (HttpClientTransport.isEnabled())
+				logger.debug("Observer connections: " + HttpClientTransport.getStatistics());
+			else
+				logger.debug("Observer connections: " + ConnectionManager.getStatistics());
+		}
 	}
 	
 	/**
@@ -406,6 +735,33 @@ public class UnicornCall {
 		addParameter(name, tab);
 	}
 	
+	/**
+	 * Sets the deadline requested by the client. It can only shorten the
+	 * deadline of the task.
+	 * 
+	 * @param requestedDeadline
+	 *            the deadline in milliseconds, 0 for none
+	 */
+	public void setRequestedDeadline(long requestedDeadline) {
+		this.requestedDeadline = requestedDeadline;
+	}
+	
+	public boolean isCountsOnly() {
+		return countsOnly;
+	}
+	
+	/**
+	 * Sets whether only the status and the message counts of the responses
+	 * are needed. The messages are then counted while reading the responses
+	 * and only created if the task needs them.
+	 * 
+	 * @param countsOnly
+	 *            true for HEAD requests
+	 */
+	public void setCountsOnly(boolean countsOnly) {
+		this.countsOnly = countsOnly;
+	}
+	
 	public String getDocumentName() {
 		return inputParameter.getDocumentName();
 	}
@@ -574,19 +930,34 @@ public class UnicornCall {
 		}
 		
 		try {
-			switch (aInputMethod.getMethod()) {
-			case DIRECT:
-				logger.debug("Creating DirectInputModule");
-				return new DirectInputModule(inputModule);
-			case UPLOAD:
-				logger.debug("Creating FakeUploadInputModule");
-				return new FakeUploadInputModule(inputModule);
-			case URI:
-				logger.debug("Creating URIInputModule");
-				return new URIInputModule(inputModule);
-			default:
-				return null;
+			synchronized (mapOfConvertedInputModule) {
+				InputModule convertedModule = mapOfConvertedInputModule.get(aInputMethod.getMethod());
+				if (convertedModule != null)
+					return convertedModule;
+				switch (aInputMethod.getMethod()) {
+				case DIRECT:
+					logger.debug("Creating DirectInputModule");
+					convertedModule = new DirectInputModule(inputModule);
+					break;
+				case UPLOAD:
+					logger.debug("Creating FakeUploadInputModule");
+					convertedModule = new FakeUploadInputModule(inputModule);
+					break;
+				case URI:
+					logger.debug("Creating URIInputModule");
+					convertedModule = new URIInputModule(inputModule);
+					break;
+				default:
+					return null;
+				}
+				mapOfConvertedInputModule.put(aInputMethod.getMethod(), convertedModule);
+				return convertedModule;
 			}
+		} catch (DocumentTooLargeException e) {
+			synchronized (messages) {
+				messages.add(new Message(Message.ERROR, "$message_document_too_large", null, Long.toString(e.getMaxSize() / 1024)));
+			}
+			return null;
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
 			return null;
@@ -597,6 +968,8 @@ public class UnicornCall {
 		inputParameter.dispose();
 		for (InputModule inputModule : inputModules)
 			inputModule.dispose();
+		if (logger.isDebugEnabled())
+			logger.debug("Temporary documents: " + TemporaryDocumentStore.getStatistics());
 	}
 	
 	public String getDate() {
@@ -9,7 +9,6 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import javax.servlet.ServletConfig;
@@ -18,20 +17,29 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.FileUploadBase.FileSizeLimitExceededException;
+import org.apache.commons.fileupload.FileUploadBase.FileUploadIOException;
+import org.apache.commons.fileupload.disk.DiskFileItem;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.apache.commons.fileupload.servlet.ServletRequestContext;
+import org.apache.commons.fileupload.util.Streams;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.unicorn.UnicornCall;
 import org.w3c.unicorn.exceptions.UnicornException;
 import org.w3c.unicorn.input.DirectInputParameter;
+import org.w3c.unicorn.input.DocumentContent;
 import org.w3c.unicorn.input.URIInputParameter;
 import org.w3c.unicorn.input.UploadInputParameter;
 import org.w3c.unicorn.output.OutputFactory;
 import org.w3c.unicorn.output.OutputModule;
 import org.w3c.unicorn.response.Response;
+import org.w3c.unicorn.response.ResponseFactory;
 import org.w3c.unicorn.util.Message;
 import org.w3c.unicorn.util.MessageList;
 import org.w3c.unicorn.util.Property;
@@ -61,7 +69,11 @@ public class ObserveAction extends Action {
 		logger.trace("Init ObserverAction");
 		factory = new DiskFileItemFactory();
 		factory.setRepository(new File(Property.get("UPLOADED_FILES_REPOSITORY")));
+		// uploads below the threshold are never written to disk
+		factory.setSizeThreshold((int) Math.min(Integer.MAX_VALUE, DocumentContent.getMemoryThreshold()));
 		upload = new ServletFileUpload(factory);
+		if (DocumentContent.getMaxSize() > 0)
+			upload.setFileSizeMax(DocumentContent.getMaxSize());
 		logger.debug("Created a ServletFileUpload with repository set to: " + Property.get("UPLOADED_FILES_REPOSITORY"));
 		
 		outputParams = new ArrayList<String>();
@@ -116,7 +128,10 @@ public class ObserveAction extends Action {
 		} catch (FileUploadException e) {
 			resp.setContentType(mapOfOutputParameter.get("mimetype") + "; charset=UTF-8");
 			OutputModule aOutputModule = OutputFactory.createOutputModule(mapOfOutputParameter, mapOfSpecificParameter);
-			messages.add(new Message(e));
+			if (e instanceof FileSizeLimitExceededException)
+				messages.add(new Message(Message.ERROR, "$message_document_too_large", null, Long.toString(((FileSizeLimitExceededException) e).getPermittedSize() / 1024)));
+			else
+				messages.add(new Message(e));
 			aOutputModule.produceError(mapOfStringObject, resp.getWriter());
 			return;
 		}
@@ -194,6 +209,13 @@ public class ObserveAction extends Action {
 						// should be impossible (see getRequestParameters)
 						logger.warn("ucn_file is not of type FileItem!");
 					}
+				} else if (paramName.equals("deadline")) {
+					logger.trace("Deadline parameter: " + key + " - " + reqParams.get(key));
+					try {
+						aUnicornCall.setRequestedDeadline(Property.parseDuration((String) reqParams.get(key)));
+					} catch (NumberFormatException e) {
+						messages.add(new Message(Message.WARNING, "$message_invalid_deadline", null, StringEscapeUtils.escapeHtml((String) reqParams.get(key))));
+					}
 				} else if (paramName.equals("text_mime")) {
 					aUnicornCall.addParameter(paramPrefix + "mime", (String) reqParams.get(key));
 				} else {
@@ -274,6 +296,7 @@ public class ObserveAction extends Action {
 		}
 		
 		// Launch the observation
+		aUnicornCall.setCountsOnly(req.getMethod().equals("HEAD"));
 		try {
 			aUnicornCall.check();
 			aOutputModule.produceFirstOutput(mapOfStringObject, resp.getWriter());
@@ -356,33 +379,46 @@ public class ObserveAction extends Action {
 		Hashtable<String, Object> params = new Hashtable<String, Object>();
 		
 		if (req.getMethod().equals("POST") && ServletFileUpload.isMultipartContent(new ServletRequestContext(req))) {
-			List<?> listOfItem = upload.parseRequest(req);
-			for (Object fileItem : listOfItem) {
-				FileItem aFileItem = (FileItem) fileItem;
-				String key = aFileItem.getFieldName();
-				if (aFileItem.isFormField()) {
-					if (params.containsKey(key)) {
-						if (params.get(key) instanceof String) {
-							String[] t = {(String) params.get(key), aFileItem.getString()};
-							params.remove(key);
-							params.put(key, (String[]) t);
-						} else if (params.get(key) instanceof String[]) {
-							int size = ((String[]) params.get(key)).length;
-							String[] aOld = (String[]) params.get(key);
-							String[] aNew = new String[size+1];
-							for (int i = 0; i < size; i++)
-								aNew[i] = aOld[i];
-							aNew[size] = aFileItem.getString();
-							params.put(key, aNew);
+			// Parts are read as they arrive: fields are decoded directly and
+			// only the uploaded document is stored, in memory if it is small
+			try {
+				FileItemIterator aIterator = upload.getItemIterator(req);
+				while (aIterator.hasNext()) {
+					FileItemStream aItemStream = aIterator.next();
+					String key = aItemStream.getFieldName();
+					if (aItemStream.isFormField()) {
+						String value = Streams.asString(aItemStream.openStream(), getCharset(aItemStream.getContentType(), req));
+						if (params.containsKey(key)) {
+							if (params.get(key) instanceof String) {
+								String[] t = {(String) params.get(key), value};
+								params.remove(key);
+								params.put(key, (String[]) t);
+							} else if (params.get(key) instanceof String[]) {
+								int size = ((String[]) params.get(key)).length;
+								String[] aOld = (String[]) params.get(key);
+								String[] aNew = new String[size+1];
+								for (int i = 0; i < size; i++)
+									aNew[i] = aOld[i];
+								aNew[size] = value;
+								params.put(key, aNew);
+							}
+						} else {
+							params.put(key, value);
 						}
+					} else if (key.equals(Property.get("UNICORN_PARAMETER_PREFIX") + "file")) {
+						FileItem aFileItem = factory.createItem(key, aItemStream.getContentType(), false, aItemStream.getName());
+						Streams.copy(aItemStream.openStream(), aFileItem.getOutputStream(), true);
+						params.put(key, aFileItem);
 					} else {
-						params.put(key, aFileItem.getString());
+						// the content of the part is skipped by the iterator
+						logger.warn("Unknown FileItem in request: " + key);
 					}
-				} else if (key.equals(Property.get("UNICORN_PARAMETER_PREFIX") + "file")) {
-					params.put(key, aFileItem);
-				} else {
-					logger.warn("Unknown FileItem in request: " + key);
 				}
+			} catch (FileUploadIOException e) {
+				// thrown by the item streams when a size limit is exceeded
+				throw (FileUploadException) e.getCause();
+			} catch (IOException e) {
+				throw new FileUploadException(e.getMessage(), e);
 			}
 		} else {
 			Enumeration<?> paramEnum = req.getParameterNames();
@@ -417,6 +453,17 @@ public class ObserveAction extends Action {
 		return params;
 	}
 
+	/**
+	 * Returns the charset of a form field, as DiskFileItem.getString() does,
+	 * falling back on the encoding of the request.
+	 */
+	private String getCharset(String contentType, HttpServletRequest req) {
+		String charset = ResponseFactory.getCharset(contentType);
+		if (charset == null)
+			charset = req.getCharacterEncoding();
+		return charset == null ? DiskFileItem.DEFAULT_CHARSET : charset;
+	}
+
 	/**
 	 * Converts an Enumeration object to a string, the terms being separated by
 	 * a coma.
@@ -0,0 +1,221 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.action;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.input.TemporaryDocumentStore;
+
+/**
+ * Serves the documents of the TemporaryDocumentStore to the observers. The
+ * URL of a document is URL_TO_TEMPORARY_FILES followed by a random token and
+ * the extension of the document, so documents cannot be found by guessing
+ * their names.
+ *
+ * The file is copied to the response, single byte ranges and conditional
+ * requests on the ETag (the hash of the document) or the date the document
+ * was stored are supported.
+ */
+public class TemporaryFileAction extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static Log logger = LogFactory.getLog(TemporaryFileAction.class);
+
+	private static final int BUFFER_SIZE = 8192;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		serve(req, resp, true);
+	}
+
+	@Override
+	protected void doHead(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		serve(req, resp, false);
+	}
+
+	@Override
+	protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		resp.setHeader("Allow", "GET, HEAD");
+		resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+	}
+
+	private void serve(HttpServletRequest req, HttpServletResponse resp, boolean sendBody) throws IOException {
+		TemporaryDocumentStore.Document document = null;
+		String path = req.getPathInfo();
+		if (path != null && path.startsWith("/")) {
+			String token = path.substring(1);
+			if (token.indexOf('.') != -1)
+				token = token.substring(0, token.indexOf('.'));
+			document = TemporaryDocumentStore.getDocument(token);
+		}
+		if (document == null) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		long length = document.getLength();
+		String eTag = "\"" + document.getHash() + "\"";
+		// dates are compared to the second, the precision of the headers
+		long lastModified = document.getCreationTime() / 1000 * 1000;
+		resp.setHeader("ETag", eTag);
+		resp.setDateHeader("Last-Modified", lastModified);
+		resp.setHeader("Accept-Ranges", "bytes");
+		resp.setHeader("Cache-Control", "private");
+
+		if (isNotModified(req, eTag, lastModified)) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		long start = 0;
+		long end = length - 1;
+		String range = req.getHeader("Range");
+		if (range != null && isRangeApplicable(req, eTag, lastModified)) {
+			long[] bounds = parseRange(range, length);
+			if (bounds == null) {
+				resp.setHeader("Content-Range", "bytes */" + length);
+				resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (bounds.length == 2) {
+				start = bounds[0];
+				end = bounds[1];
+				resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+
+		resp.setContentType(document.getContentType());
+		resp.setHeader("Content-Length", Long.toString(end - start + 1));
+		if (!sendBody || end < start)
+			return;
+
+		FileInputStream in;
+		try {
+			in = new FileInputStream(document.getFile());
+		} catch (IOException e) {
+			// deleted by the sweeper in the meantime
+			logger.debug("Temporary file not available: " + document.getFile());
+			resp.reset();
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		try {
+			OutputStream out = resp.getOutputStream();
+			in.getChannel().position(start);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			for (long count = end - start + 1; count > 0;) {
+				int n = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+				if (n < 0)
+					break;
+				out.write(buffer, 0, n);
+				count -= n;
+			}
+			out.flush();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return true if the document has not changed since the version held by
+	 *         the client, according to If-None-Match or If-Modified-Since
+	 */
+	private boolean isNotModified(HttpServletRequest req, String eTag, long lastModified) {
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null)
+			return matches(ifNoneMatch, eTag);
+		try {
+			long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			return ifModifiedSince != -1 && lastModified <= ifModifiedSince;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return false if an If-Range header names another version of the
+	 *         document, in which case the whole document is sent
+	 */
+	private boolean isRangeApplicable(HttpServletRequest req, String eTag, long lastModified) {
+		String ifRange = req.getHeader("If-Range");
+		if (ifRange == null)
+			return true;
+		if (ifRange.trim().startsWith("\""))
+			return ifRange.trim().equals(eTag);
+		try {
+			return req.getDateHeader("If-Range") == lastModified;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private boolean matches(String header, String eTag) {
+		for (String value : header.split(",")) {
+			value = value.trim();
+			if (value.startsWith("W/"))
+				value = value.substring(2);
+			if (value.equals("*") || value.equals(eTag))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a Range header. Only single ranges are served, other requests
+	 * get the whole document.
+	 *
+	 * @return the first and last bytes of the range, an empty array if the
+	 *         whole document must be sent, or null if the range cannot be
+	 *         satisfied
+	 */
+	private long[] parseRange(String range, long length) {
+		range = range.trim();
+		if (!range.startsWith("bytes=") || range.indexOf(',') != -1)
+			return new long[0];
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash == -1)
+			return new long[0];
+		try {
+			long start;
+			long end;
+			if (dash == 0) {
+				long suffix = Long.parseLong(spec.substring(1).trim());
+				if (suffix <= 0)
+					return null;
+				start = Math.max(0, length - suffix);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(spec.substring(0, dash).trim());
+				String last = spec.substring(dash + 1).trim();
+				end = length - 1;
+				if (last.length() > 0) {
+					long lastByte = Long.parseLong(last);
+					if (lastByte < start)
+						return new long[0];
+					end = Math.min(lastByte, end);
+				}
+			}
+			if (start >= length)
+				return null;
+			return new long[] {start, end};
+		} catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+}
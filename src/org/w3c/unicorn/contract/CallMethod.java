@@ -45,6 +45,11 @@ public class CallMethod {
 	 * whether the call is sent or not
 	 */
 	ArrayList<CallParameter> callParameters;
+
+	/**
+	 * Content-Encoding accepted by the observer for request bodies, or null
+	 */
+	private String sRequestEncoding;
 	
 	/**
 	 * Set the parameter for the object call
@@ -146,6 +151,26 @@ public class CallMethod {
 		return this.sName;
 	}
 
+	/**
+	 * Returns the Content-Encoding accepted by the observer for the body of
+	 * the request, declared in the contract with a requestEncoding doc
+	 * 
+	 * @return gzip, or null if the body must be sent uncompressed
+	 */
+	public String getRequestEncoding() {
+		return this.sRequestEncoding;
+	}
+
+	/**
+	 * Sets the Content-Encoding accepted for the body of the request
+	 * 
+	 * @param sRequestEncoding
+	 *            gzip, or null
+	 */
+	public void setRequestEncoding(final String sRequestEncoding) {
+		this.sRequestEncoding = sRequestEncoding;
+	}
+
 	/**
 	 * Print the object
 	 */
@@ -161,6 +186,8 @@ public class CallMethod {
 		aStringBuffer.append(sVariableSeparator);
 		aStringBuffer.append("post=").append(this.bPost);
 		aStringBuffer.append(sVariableSeparator);
+		aStringBuffer.append("requestEncoding=").append(this.sRequestEncoding);
+		aStringBuffer.append(sVariableSeparator);
 		aStringBuffer.append("parameters=\n");
 		aStringBuffer.append(this.callParameters)
 				.append(sVariableSeparator);
@@ -11,6 +11,7 @@ import javax.activation.MimeType;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.unicorn.exceptions.UnknownParserException;
+import org.w3c.unicorn.response.ResponseValidation;
 import org.w3c.unicorn.util.LocalizedString;
 import org.w3c.unicorn.util.Property;
 
@@ -78,6 +79,11 @@ public class Observer {
 
 	private String indexURI;
 	
+	/**
+	 * Which responses of this observer are validated against the schema
+	 */
+	private ResponseValidation responseValidation = null;
+	
 	/**
 	 * Creates the observer
 	 * 
@@ -291,4 +297,12 @@ public class Observer {
 		this.indexURI = indexURI;
 	}
 
+	public ResponseValidation getResponseValidation() {
+		return responseValidation;
+	}
+
+	public void setResponseValidation(ResponseValidation responseValidation) {
+		this.responseValidation = responseValidation;
+	}
+
 }
@@ -44,4 +44,6 @@ public interface WADLUnmarshaller extends Unmarshaller {
 
 	public String getIndexUri();
 
+	public String getResponseValidation();
+
 }
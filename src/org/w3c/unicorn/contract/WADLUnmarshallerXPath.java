@@ -115,6 +115,11 @@ public class WADLUnmarshallerXPath implements WADLUnmarshaller {
 
 	private String responseType;
 
+	/**
+	 * Validation policy of the responses, null for the default
+	 */
+	private String responseValidation = null;
+
 	/**
 	 * name of parameter lang if observer has one
 	 */
@@ -232,6 +237,8 @@ public class WADLUnmarshallerXPath implements WADLUnmarshaller {
 				sID = vText;
 			} else if ("responseType".equals(vTitle)) {
 				responseType = vText;
+			} else if ("responseValidation".equals(vTitle)) {
+				responseValidation = vText.trim();
 			}
 		}
 	}
@@ -352,6 +359,7 @@ public class WADLUnmarshallerXPath implements WADLUnmarshaller {
 			NodeList listChildMethod = aNodeMethod.getChildNodes();
 			String sInputMethod = null;
 			String sInputParamName = null;
+			String sRequestEncoding = null;
 			for (int j = 0; j < listChildMethod.getLength(); j++) {
 				Node childMethod = listChildMethod.item(j);
 				if ("doc".equals(childMethod.getNodeName())) {
@@ -364,11 +372,20 @@ public class WADLUnmarshallerXPath implements WADLUnmarshaller {
 							sInputMethod = childMethod.getTextContent();
 						} else if ("inputParamName".equals(firstAttrValue)) {
 							sInputParamName = childMethod.getTextContent();
+						} else if ("requestEncoding".equals(firstAttrValue)) {
+							sRequestEncoding = childMethod.getTextContent().trim();
 						}
 					}
 				}
 			}
 
+			if (sRequestEncoding != null) {
+				if ("gzip".equalsIgnoreCase(sRequestEncoding))
+					aCallMethod.setRequestEncoding("gzip");
+				else
+					logger.warn("Unsupported requestEncoding for method " + sMethodID + ": " + sRequestEncoding + ". Request bodies will not be compressed.");
+			}
+
 			InputMethod aInputMethod = new InputMethod(sInputMethod);
 			aInputMethod.setCallMethod(aCallMethod);
 			aInputMethod.setCallParameter(aCallMethod
@@ -469,4 +486,8 @@ public class WADLUnmarshallerXPath implements WADLUnmarshaller {
 		return indexURI;
 	}
 
+	public String getResponseValidation() {
+		return responseValidation;
+	}
+
 }
@@ -0,0 +1,142 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.w3c.unicorn.response.ResponseFactory;
+
+/**
+ * Finds the charset of a document from its bytes. The charset is taken, in
+ * this order, from the byte order mark, from the Content-Type of the document
+ * and from an XML declaration or a meta element in its first bytes.
+ */
+public class CharsetDetector {
+
+	/**
+	 * Charset used to decode a document whose charset is unknown
+	 */
+	public static final String DEFAULT_CHARSET = "UTF-8";
+
+	/**
+	 * Number of bytes searched for an XML declaration or a meta element
+	 */
+	private static final int SNIFF_SIZE = 1024;
+
+	private static final Pattern xmlDeclarationPattern = Pattern.compile(
+			"^<\\?xml[^>]*?encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+
+	private static final Pattern metaPattern = Pattern.compile(
+			"<meta\\s[^>]*?charset\\s*=\\s*[\"']?([A-Za-z0-9._:-]+)", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Finds the charset of a document and closes the stream.
+	 *
+	 * @param contentType
+	 *            the Content-Type of the document, or null
+	 * @param in
+	 *            the stream of the document
+	 * @return the charset of the document, or null if it is unknown
+	 * @throws IOException
+	 *             if the document could not be read
+	 */
+	public static String detect(String contentType, InputStream in) throws IOException {
+		byte[] head = new byte[SNIFF_SIZE];
+		int length = 0;
+		try {
+			for (int n; length < head.length && (n = in.read(head, length, head.length - length)) != -1;)
+				length += n;
+		} finally {
+			in.close();
+		}
+		return detect(contentType, head, length);
+	}
+
+	/**
+	 * Finds the charset of a document.
+	 *
+	 * @param contentType
+	 *            the Content-Type of the document, or null
+	 * @param head
+	 *            the first bytes of the document
+	 * @param length
+	 *            the number of bytes of head to use
+	 * @return the charset of the document, or null if it is unknown
+	 */
+	public static String detect(String contentType, byte[] head, int length) {
+		String charset = getBOMCharset(head, length);
+		if (charset != null)
+			return charset;
+		charset = ResponseFactory.getCharset(contentType);
+		if (isSupported(charset))
+			return charset;
+		String text = new String(head, 0, Math.min(length, SNIFF_SIZE), Charset.forName("ISO-8859-1"));
+		Matcher matcher = xmlDeclarationPattern.matcher(text);
+		if (!matcher.find()) {
+			matcher = metaPattern.matcher(text);
+			if (!matcher.find())
+				return null;
+		}
+		charset = matcher.group(1);
+		// the declaration has been read as ASCII, so the document cannot be
+		// in UTF-16 or UTF-32 without a byte order mark
+		if (charset.toUpperCase().startsWith("UTF-16") || charset.toUpperCase().startsWith("UTF-32"))
+			return "UTF-8";
+		return isSupported(charset) ? charset : null;
+	}
+
+	/**
+	 * Decodes a document and closes the stream. The byte order mark, if any,
+	 * is removed.
+	 *
+	 * @param in
+	 *            the stream of the document
+	 * @param charset
+	 *            the charset of the document, or null for DEFAULT_CHARSET
+	 * @return the content of the document
+	 * @throws IOException
+	 *             if the document could not be read
+	 */
+	public static String decode(InputStream in, String charset) throws IOException {
+		Reader reader = new InputStreamReader(in, isSupported(charset) ? charset : DEFAULT_CHARSET);
+		try {
+			StringBuilder content = new StringBuilder();
+			char[] buffer = new char[8192];
+			for (int n; (n = reader.read(buffer)) != -1;)
+				content.append(buffer, 0, n);
+			if (content.length() > 0 && content.charAt(0) == '\uFEFF')
+				content.deleteCharAt(0);
+			return content.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static String getBOMCharset(byte[] head, int length) {
+		if (length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF)
+			return "UTF-8";
+		if (length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF)
+			return "UTF-16BE";
+		if (length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE)
+			return "UTF-16LE";
+		return null;
+	}
+
+	private static boolean isSupported(String charset) {
+		if (charset == null)
+			return false;
+		try {
+			return Charset.isSupported(charset);
+		} catch (IllegalCharsetNameException e) {
+			return false;
+		}
+	}
+
+}
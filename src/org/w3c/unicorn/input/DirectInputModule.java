@@ -3,7 +3,9 @@
 // Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.input;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.activation.MimeType;
 
@@ -16,6 +18,11 @@ import org.w3c.unicorn.contract.EnumInputMethod;
  */
 public class DirectInputModule implements InputModule {
 
+	/**
+	 * Charset of the bytes of a direct input, which is given as text
+	 */
+	public static final String CHARSET = "UTF-8";
+
 	/**
 	 * Sets the input method to DIRECT
 	 */
@@ -26,6 +33,11 @@ public class DirectInputModule implements InputModule {
 	 */
 	private String sInput = null;
 
+	/**
+	 * Parameter encoded in CHARSET, on first use
+	 */
+	private byte[] bytes = null;
+
 	/**
 	 * Mime-type used for the call
 	 */
@@ -88,11 +100,31 @@ public class DirectInputModule implements InputModule {
 		return this.sInput;
 	}
 
+	public InputStream getInputStream() throws IOException {
+		return new ByteArrayInputStream(getBytes());
+	}
+
+	public String getCharset() {
+		return CHARSET;
+	}
+
+	/**
+	 * @return the input encoded in CHARSET, which must not be modified
+	 * @throws IOException
+	 *             if CHARSET is not supported
+	 */
+	protected synchronized byte[] getBytes() throws IOException {
+		if (this.bytes == null)
+			this.bytes = this.sInput.getBytes(CHARSET);
+		return this.bytes;
+	}
+
 	/**
 	 * Dispose the object
 	 */
 	public void dispose() {
 		logger.trace("dispose");
+		this.bytes = null;
 	}
 
 	/**
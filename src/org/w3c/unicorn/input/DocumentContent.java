@@ -0,0 +1,258 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.input;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.util.Property;
+
+/**
+ * Content of a document, downloaded once for a call and shared by all the
+ * input modules which need it. Small documents are kept in memory, bigger
+ * ones in a temporary file. The size of a document is limited by
+ * DOCUMENT_MAX_SIZE.
+ */
+public class DocumentContent {
+
+	private static final Log logger = LogFactory.getLog(DocumentContent.class);
+
+	/**
+	 * Content of the document if it is kept in memory
+	 */
+	private byte[] bytes;
+
+	/**
+	 * Temporary file holding the content of the document otherwise
+	 */
+	private File file;
+
+	private long length;
+
+	/**
+	 * Content-Type the document was served with, if any
+	 */
+	private String contentType;
+
+	/**
+	 * Charset of the document, found on first use
+	 */
+	private String charset;
+
+	private boolean charsetDetected;
+
+	private DocumentContent(byte[] bytes, String contentType) {
+		this.bytes = bytes;
+		this.length = bytes.length;
+		this.contentType = contentType;
+	}
+
+	private DocumentContent(File file, long length, String contentType) {
+		this.file = file;
+		this.length = length;
+		this.contentType = contentType;
+	}
+
+	/**
+	 * Reads a document and closes the stream.
+	 *
+	 * @param in
+	 *            the stream of the document
+	 * @return the content of the document
+	 * @throws DocumentTooLargeException
+	 *             if the document is larger than DOCUMENT_MAX_SIZE
+	 * @throws IOException
+	 *             if the document could not be read
+	 */
+	public static DocumentContent read(InputStream in) throws IOException {
+		return read(in, null);
+	}
+
+	/**
+	 * Reads a document and closes the stream.
+	 *
+	 * @param in
+	 *            the stream of the document
+	 * @param contentType
+	 *            the Content-Type the document was served with, used to
+	 *            find its charset, or null
+	 * @return the content of the document
+	 * @throws DocumentTooLargeException
+	 *             if the document is larger than DOCUMENT_MAX_SIZE
+	 * @throws IOException
+	 *             if the document could not be read
+	 */
+	public static DocumentContent read(InputStream in, String contentType) throws IOException {
+		long maxSize = getMaxSize();
+		long memoryThreshold = getMemoryThreshold();
+		byte[] buffer = new byte[8192];
+		ByteArrayOutputStream memory = new ByteArrayOutputStream();
+		File tmpFile = null;
+		OutputStream out = memory;
+		long length = 0;
+		try {
+			for (int n; (n = in.read(buffer)) != -1;) {
+				length += n;
+				if (maxSize > 0 && length > maxSize)
+					throw new DocumentTooLargeException(maxSize);
+				if (tmpFile == null && length > memoryThreshold) {
+					tmpFile = File.createTempFile("doc_", ".tmp", new File(Property.get("PATH_TO_TEMPORARY_FILES")));
+					out = new FileOutputStream(tmpFile);
+					memory.writeTo(out);
+					memory = null;
+				}
+				out.write(buffer, 0, n);
+			}
+			out.close();
+		} catch (IOException e) {
+			out.close();
+			if (tmpFile != null)
+				tmpFile.delete();
+			throw e;
+		} finally {
+			in.close();
+		}
+		if (tmpFile != null) {
+			logger.debug("Document of " + length + " bytes stored in " + tmpFile);
+			return new DocumentContent(tmpFile, length, contentType);
+		}
+		return new DocumentContent(memory.toByteArray(), contentType);
+	}
+
+	/**
+	 * Wraps content already in memory. The array must not be modified
+	 * afterwards.
+	 *
+	 * @param bytes
+	 *            the content of the document
+	 * @param contentType
+	 *            the Content-Type of the document, or null
+	 * @return the content of the document
+	 */
+	public static DocumentContent wrap(byte[] bytes, String contentType) {
+		return new DocumentContent(bytes, contentType);
+	}
+
+	/**
+	 * @return the maximum size of a document in bytes (DOCUMENT_MAX_SIZE), 0
+	 *         for no limit
+	 */
+	public static long getMaxSize() {
+		return getLongProperty("DOCUMENT_MAX_SIZE", 10485760);
+	}
+
+	/**
+	 * @return the size in bytes above which a document is kept in a
+	 *         temporary file (DOCUMENT_MEMORY_THRESHOLD)
+	 */
+	public static long getMemoryThreshold() {
+		return getLongProperty("DOCUMENT_MEMORY_THRESHOLD", 1048576);
+	}
+
+	/**
+	 * @return the size of the document in bytes
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the temporary file holding the document, or null if it is kept
+	 *         in memory
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return a new stream over the content of the document
+	 * @throws IOException
+	 *             if the temporary file could not be read
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (bytes != null)
+			return new ByteArrayInputStream(bytes);
+		return new FileInputStream(file);
+	}
+
+	/**
+	 * Finds the charset of the document from its Content-Type, its byte
+	 * order mark or its declaration (see CharsetDetector).
+	 *
+	 * @return the charset of the document, or null if it is unknown
+	 * @throws IOException
+	 *             if the temporary file could not be read
+	 */
+	public synchronized String getCharset() throws IOException {
+		if (!charsetDetected) {
+			if (bytes != null)
+				charset = CharsetDetector.detect(contentType, bytes, bytes.length);
+			else
+				charset = CharsetDetector.detect(contentType, getInputStream());
+			charsetDetected = true;
+		}
+		return charset;
+	}
+
+	/**
+	 * Decodes the document with its charset.
+	 *
+	 * @return the content of the document as a string
+	 * @throws IOException
+	 *             if the temporary file could not be read
+	 */
+	public String getString() throws IOException {
+		return CharsetDetector.decode(getInputStream(), getCharset());
+	}
+
+	/**
+	 * Deletes the temporary file holding the document, if any.
+	 */
+	public void dispose() {
+		if (file != null && file.delete()) {
+			logger.debug("Document file deleted: " + file);
+			file = null;
+		}
+		bytes = null;
+	}
+
+	private static long getLongProperty(String key, long defaultValue) {
+		String value = Property.get(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value for " + key + ": " + value + ". Using default value: " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Thrown when a document is larger than DOCUMENT_MAX_SIZE
+	 */
+	public static class DocumentTooLargeException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long maxSize;
+
+		public DocumentTooLargeException(long maxSize) {
+			super("Document larger than " + maxSize + " bytes");
+			this.maxSize = maxSize;
+		}
+
+		public long getMaxSize() {
+			return maxSize;
+		}
+	}
+
+}
@@ -3,10 +3,9 @@
 // Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.input;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 
 import javax.activation.MimeType;
 
@@ -26,9 +25,25 @@ public class FakeUploadInputModule implements UploadInputModule {
 	private final EnumInputMethod aEnumInputMethod = EnumInputMethod.UPLOAD;
 
 	/**
-	 * Content of the input
+	 * Content sent to the observers, shared by all the streams
 	 */
-	private String sContent = null;
+	private DocumentContent aContent = null;
+
+	/**
+	 * Whether the content was created by this module and must be disposed
+	 * with it, otherwise it belongs to the source module
+	 */
+	private boolean bOwnsContent = false;
+
+	/**
+	 * Charset of the content
+	 */
+	private String sCharset = null;
+
+	/**
+	 * Module this one was created from
+	 */
+	private InputModule aSourceModule = null;
 
 	/**
 	 * Name of the file to input
@@ -51,7 +66,18 @@ public class FakeUploadInputModule implements UploadInputModule {
 		logger.trace("Constructor");
 		logger.debug("Input module : " + aInputModule + ".");
 		this.aMimeType = aInputModule.getMimeType();
-		this.sContent = aInputModule.getStringContent();
+		this.aSourceModule = aInputModule;
+		if (aInputModule instanceof URIInputModule) {
+			// the downloaded bytes are sent as is
+			this.aContent = ((URIInputModule) aInputModule).getContent();
+		} else if (aInputModule instanceof DirectInputModule) {
+			this.aContent = DocumentContent.wrap(((DirectInputModule) aInputModule).getBytes(), null);
+			this.bOwnsContent = true;
+		} else {
+			this.aContent = DocumentContent.read(aInputModule.getInputStream());
+			this.bOwnsContent = true;
+		}
+		this.sCharset = aInputModule.getCharset();
 	}
 
 	/**
@@ -63,16 +89,11 @@ public class FakeUploadInputModule implements UploadInputModule {
 	}
 
 	/**
-	 * Get the stream of the input using the content
+	 * Get a new stream over the content, which is not copied
 	 */
 	public InputStream getInputStream() throws IOException {
 		logger.trace("getInputStream");
-		final PipedOutputStream aPipedOutputStream = new PipedOutputStream();
-		aPipedOutputStream.write(this.sContent.getBytes());
-		aPipedOutputStream.close();
-		final PipedInputStream aPipedInputStream = new PipedInputStream();
-		aPipedOutputStream.connect(aPipedInputStream);
-		return aPipedInputStream;
+		return this.aContent.getInputStream();
 	}
 
 	public EnumInputMethod getEnumInputMethod() {
@@ -85,14 +106,26 @@ public class FakeUploadInputModule implements UploadInputModule {
 		return this.aMimeType;
 	}
 
+	public long getSize() {
+		return this.aContent.getLength();
+	}
+
+	public File getFile() {
+		return this.aContent.getFile();
+	}
+
 	public Object getParameterValue() {
 		logger.trace("getParameterValue");
-		return this.sContent;
+		return this.aContent;
+	}
+
+	public String getCharset() {
+		return this.sCharset;
 	}
 
 	public String getStringContent() throws IOException {
 		logger.trace("getStringContent");
-		return this.sContent;
+		return this.aSourceModule.getStringContent();
 	}
 
 	/**
@@ -100,6 +133,8 @@ public class FakeUploadInputModule implements UploadInputModule {
 	 */
 	public void dispose() {
 		logger.trace("dispose");
+		if (this.bOwnsContent)
+			this.aContent.dispose();
 	}
 
 	/**
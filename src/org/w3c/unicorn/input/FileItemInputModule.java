@@ -3,12 +3,14 @@
 // Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.input;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
 import javax.activation.MimeType;
 
 import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItem;
 import org.w3c.unicorn.contract.EnumInputMethod;
 
 /**
@@ -29,6 +31,13 @@ public class FileItemInputModule implements UploadInputModule {
 	 */
 	private FileItem aFileItem = null;
 
+	/**
+	 * Charset of the file, found on first use
+	 */
+	private String sCharset = null;
+
+	private boolean bCharsetDetected = false;
+
 	/**
 	 * The mime-type of the file
 	 */
@@ -75,14 +84,32 @@ public class FileItemInputModule implements UploadInputModule {
 		return this.aMimeType;
 	}
 
+	public long getSize() {
+		return this.aFileItem.getSize();
+	}
+
+	public File getFile() {
+		if (this.aFileItem instanceof DiskFileItem && !this.aFileItem.isInMemory())
+			return ((DiskFileItem) this.aFileItem).getStoreLocation();
+		return null;
+	}
+
 	public Object getParameterValue() {
 		logger.trace("getParameterValue");
 		return this.aFileItem;
 	}
 
-	public String getStringContent() {
+	public synchronized String getCharset() throws IOException {
+		if (!this.bCharsetDetected) {
+			this.sCharset = CharsetDetector.detect(this.aFileItem.getContentType(), this.aFileItem.getInputStream());
+			this.bCharsetDetected = true;
+		}
+		return this.sCharset;
+	}
+
+	public String getStringContent() throws IOException {
 		logger.trace("getStringContent");
-		return this.aFileItem.getString();
+		return CharsetDetector.decode(this.aFileItem.getInputStream(), getCharset());
 	}
 
 	/**
@@ -4,6 +4,7 @@
 package org.w3c.unicorn.input;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.activation.MimeType;
 
@@ -26,6 +27,28 @@ public interface InputModule {
 
 	public Object getParameterValue();
 
+	/**
+	 * @return a new stream over the bytes of the input
+	 * @throws IOException
+	 *             if the input could not be read
+	 */
+	public InputStream getInputStream() throws IOException;
+
+	/**
+	 * @return the charset of the bytes of the input, or null if it is unknown
+	 * @throws IOException
+	 *             if the input could not be read
+	 */
+	public String getCharset() throws IOException;
+
+	/**
+	 * Decodes the input with its charset. Only the observers which take the
+	 * input as text should need it.
+	 * 
+	 * @return the content of the input as text
+	 * @throws IOException
+	 *             if the input could not be read
+	 */
 	public String getStringContent() throws IOException;
 
 	/**
@@ -0,0 +1,496 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.input;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.activation.MimeType;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.util.Property;
+
+/**
+ * Documents published under URL_TO_TEMPORARY_FILES for the observers which
+ * only accept a URI.
+ *
+ * A document is stored in PATH_TO_TEMPORARY_FILES under the hash of its
+ * content, so it is written once however many calls check it at the same
+ * time. Each call holds a reference on the document until it is disposed.
+ * Documents no longer referenced are kept TEMPORARY_FILES_IDLE_TIME
+ * milliseconds to be reused by the next checks, then deleted by a sweeper
+ * running every TEMPORARY_FILES_SWEEP_INTERVAL milliseconds. When the
+ * documents take more than TEMPORARY_FILES_MAX_SIZE bytes, the sweeper is
+ * run at once and deletes the oldest unreferenced ones first.
+ */
+public class TemporaryDocumentStore {
+
+	private static final Log logger = LogFactory.getLog(TemporaryDocumentStore.class);
+
+	/**
+	 * Names of the files created by the store, and by previous versions of
+	 * Unicorn, which the sweeper may delete when they are not in the store
+	 */
+	private static final Pattern storeFilePattern = Pattern.compile("[0-9a-f]{64}(\\..*)?|store_.*\\.part|tmp_[0-9]+_\\..*");
+
+	/**
+	 * Stored documents by file name
+	 */
+	private static final Map<String, Document> mapOfDocument = new HashMap<String, Document>();
+
+	/**
+	 * Stored documents by the token of their URL
+	 */
+	private static final Map<String, Document> mapOfToken = new HashMap<String, Document>();
+
+	private static final SecureRandom aRandom = new SecureRandom();
+
+	private static ScheduledExecutorService sweeper;
+
+	/**
+	 * True while a sweep asked by store is waiting for the sweeper
+	 */
+	private static final AtomicBoolean sweepRequested = new AtomicBoolean();
+
+	private static final Runnable sweepTask = new Runnable() {
+		public void run() {
+			sweepRequested.set(false);
+			try {
+				sweep();
+			} catch (RuntimeException e) {
+				logger.error("Error while deleting temporary files", e);
+			}
+		}
+	};
+
+	private static long storedBytes = 0;
+
+	private static final AtomicLong writeCount = new AtomicLong();
+
+	private static final AtomicLong hitCount = new AtomicLong();
+
+	private static final AtomicLong deletedCount = new AtomicLong();
+
+	private static final AtomicLong deletedBytes = new AtomicLong();
+
+	/**
+	 * Starts the sweeper. The files left in PATH_TO_TEMPORARY_FILES by a
+	 * previous run are deleted on its first pass.
+	 */
+	public static synchronized void init() {
+		shutdown();
+		long interval = getLongProperty("TEMPORARY_FILES_SWEEP_INTERVAL", 60000);
+		if (interval <= 0)
+			interval = 60000;
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "unicorn-temporary-files");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sweeper.scheduleWithFixedDelay(sweepTask, interval, interval, TimeUnit.MILLISECONDS);
+		logger.info("Temporary files: unreferenced documents kept " + getLongProperty("TEMPORARY_FILES_IDLE_TIME", 60000)
+				+ "ms, at most " + getLongProperty("TEMPORARY_FILES_MAX_SIZE", 104857600) + " bytes, swept every " + interval + "ms");
+	}
+
+	/**
+	 * Stops the sweeper. The stored documents are left on disk.
+	 */
+	public static synchronized void shutdown() {
+		if (sweeper != null) {
+			sweeper.shutdownNow();
+			sweeper = null;
+		}
+	}
+
+	/**
+	 * Stores a document, or takes a new reference on it if the same content
+	 * is already stored, and closes the stream.
+	 *
+	 * @param in
+	 *            the content of the document
+	 * @param aMimeType
+	 *            the type of the document
+	 * @param sCharset
+	 *            the charset of the document, or null if it is unknown
+	 * @return the stored document, which must be released once no longer
+	 *         needed
+	 * @throws IOException
+	 *             if the document could not be written
+	 */
+	public static StoredDocument store(InputStream in, MimeType aMimeType, String sCharset) throws IOException {
+		String sExtension = Property.getProps("extensions.properties").getProperty(aMimeType.toString());
+		String sContentType = aMimeType.toString();
+		if (sCharset != null)
+			sContentType += "; charset=" + sCharset;
+		File directory = new File(Property.get("PATH_TO_TEMPORARY_FILES"));
+		File partFile = File.createTempFile("store_", ".part", directory);
+		MessageDigest digest = newDigest();
+		long length;
+		try {
+			OutputStream out = new FileOutputStream(partFile);
+			try {
+				length = IOUtils.copyLarge(new DigestInputStream(in, digest), out);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			partFile.delete();
+			throw e;
+		} finally {
+			in.close();
+		}
+		String sHash = toHex(digest.digest());
+		String sFileName = sHash;
+		if (sExtension != null && sExtension.length() > 0)
+			sFileName += "." + sExtension;
+
+		boolean bOverSize;
+		Document document;
+		synchronized (mapOfDocument) {
+			document = mapOfDocument.get(sFileName);
+			if (document != null && document.file.exists()) {
+				partFile.delete();
+				hitCount.incrementAndGet();
+			} else {
+				File file = new File(directory, sFileName);
+				if (file.exists()) {
+					// left by a previous run, its content is the same
+					partFile.delete();
+					file.setLastModified(System.currentTimeMillis());
+				} else if (!partFile.renameTo(file)) {
+					partFile.delete();
+					throw new IOException("Unable to create temporary file " + file);
+				}
+				if (document != null) {
+					storedBytes -= document.length;
+					mapOfToken.remove(document.token);
+				}
+				document = new Document(file, length, sContentType, sHash, newToken());
+				mapOfDocument.put(sFileName, document);
+				mapOfToken.put(document.token, document);
+				storedBytes += length;
+				writeCount.incrementAndGet();
+				logger.debug("Document of " + length + " bytes stored in " + file);
+			}
+			document.references++;
+			long maxSize = getLongProperty("TEMPORARY_FILES_MAX_SIZE", 104857600);
+			bOverSize = maxSize > 0 && storedBytes > maxSize;
+		}
+		if (bOverSize)
+			requestSweep();
+		return new StoredDocument(document);
+	}
+
+	/**
+	 * Finds a stored document from the token of its URL.
+	 *
+	 * @param sToken
+	 *            the token
+	 * @return the document, or null if there is none for this token
+	 */
+	public static Document getDocument(String sToken) {
+		synchronized (mapOfDocument) {
+			Document document = mapOfToken.get(sToken);
+			// a token of a deleted document must not serve the same
+			// content stored again under a new token
+			if (document == null || mapOfDocument.get(document.file.getName()) != document || !document.file.exists())
+				return null;
+			return document;
+		}
+	}
+
+	/**
+	 * Asks the sweeper for a sweep when the documents take more than
+	 * TEMPORARY_FILES_MAX_SIZE, so that the thread storing a document does
+	 * not scan the directory. Without a sweeper, the unreferenced documents
+	 * are evicted on the current thread.
+	 */
+	private static void requestSweep() {
+		ScheduledExecutorService aSweeper;
+		synchronized (TemporaryDocumentStore.class) {
+			aSweeper = sweeper;
+		}
+		if (aSweeper == null) {
+			evict(System.currentTimeMillis());
+			return;
+		}
+		if (sweepRequested.compareAndSet(false, true)) {
+			try {
+				aSweeper.execute(sweepTask);
+			} catch (RejectedExecutionException e) {
+				// shut down in the meantime
+				sweepRequested.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the documents which have not been referenced for
+	 * TEMPORARY_FILES_IDLE_TIME, then, if the documents still take more than
+	 * TEMPORARY_FILES_MAX_SIZE, the other unreferenced ones from the oldest.
+	 * Files of the store left by a previous run are deleted too. It is run by
+	 * the sweeper, as it lists the whole directory.
+	 */
+	public static void sweep() {
+		long now = System.currentTimeMillis();
+		evict(now);
+		long idleTime = getLongProperty("TEMPORARY_FILES_IDLE_TIME", 60000);
+		// the directory is listed without holding the lock, which is only
+		// taken to check and delete each file that is not in the store
+		File[] files = new File(Property.get("PATH_TO_TEMPORARY_FILES")).listFiles();
+		if (files == null)
+			return;
+		for (File file : files) {
+			if (!storeFilePattern.matcher(file.getName()).matches() || now - file.lastModified() < idleTime)
+				continue;
+			synchronized (mapOfDocument) {
+				if (!mapOfDocument.containsKey(file.getName()))
+					delete(file, file.length());
+			}
+		}
+	}
+
+	/**
+	 * Deletes the unreferenced documents of the store which are idle or
+	 * exceed TEMPORARY_FILES_MAX_SIZE, without listing the directory.
+	 */
+	private static void evict(long now) {
+		long idleTime = getLongProperty("TEMPORARY_FILES_IDLE_TIME", 60000);
+		long maxSize = getLongProperty("TEMPORARY_FILES_MAX_SIZE", 104857600);
+		synchronized (mapOfDocument) {
+			List<Map.Entry<String, Document>> unreferenced = new ArrayList<Map.Entry<String, Document>>();
+			for (Map.Entry<String, Document> mapEntry : mapOfDocument.entrySet())
+				if (mapEntry.getValue().references == 0)
+					unreferenced.add(mapEntry);
+			Collections.sort(unreferenced, new Comparator<Map.Entry<String, Document>>() {
+				public int compare(Map.Entry<String, Document> e1, Map.Entry<String, Document> e2) {
+					return Long.valueOf(e1.getValue().releaseTime).compareTo(Long.valueOf(e2.getValue().releaseTime));
+				}
+			});
+			for (Map.Entry<String, Document> mapEntry : unreferenced) {
+				Document document = mapEntry.getValue();
+				if (now - document.releaseTime < idleTime && (maxSize <= 0 || storedBytes <= maxSize))
+					break;
+				mapOfDocument.remove(mapEntry.getKey());
+				mapOfToken.remove(document.token);
+				storedBytes -= document.length;
+				delete(document.file, document.length);
+			}
+			if (maxSize > 0 && storedBytes > maxSize)
+				logger.warn("Temporary documents in use take " + storedBytes + " bytes, more than TEMPORARY_FILES_MAX_SIZE (" + maxSize + ")");
+		}
+	}
+
+	/**
+	 * @return the number of bytes taken by the stored documents
+	 */
+	public static long getStoredBytes() {
+		synchronized (mapOfDocument) {
+			return storedBytes;
+		}
+	}
+
+	public static String getStatistics() {
+		int documents;
+		int referenced = 0;
+		synchronized (mapOfDocument) {
+			documents = mapOfDocument.size();
+			for (Document document : mapOfDocument.values())
+				if (document.references > 0)
+					referenced++;
+		}
+		return "documents: " + documents + " (" + referenced + " in use), bytes stored: " + getStoredBytes()
+			+ ", written: " + writeCount.get() + ", reused: " + hitCount.get()
+			+ ", deleted: " + deletedCount.get() + " (" + deletedBytes.get() + " bytes)";
+	}
+
+	private static void delete(File file, long length) {
+		if (file.delete()) {
+			deletedCount.incrementAndGet();
+			deletedBytes.addAndGet(length);
+			logger.debug("Temporary file deleted: " + file);
+		} else if (file.exists()) {
+			logger.warn("Unable to delete temporary file: " + file);
+		}
+	}
+
+	private static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("SHA-256 is not available: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return a new random token, which cannot be guessed from the document
+	 */
+	private static String newToken() {
+		byte[] bytes = new byte[16];
+		aRandom.nextBytes(bytes);
+		return toHex(bytes);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static long getLongProperty(String key, long defaultValue) {
+		String value = Property.get(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value for " + key + ": " + value + ". Using default value: " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * A stored file and the number of calls using it
+	 */
+	public static class Document {
+
+		private final File file;
+
+		private final long length;
+
+		private final String contentType;
+
+		private final String hash;
+
+		/**
+		 * Random token identifying the document in its URL
+		 */
+		private final String token;
+
+		private final long creationTime;
+
+		private int references;
+
+		/**
+		 * Time the last reference was released
+		 */
+		private long releaseTime;
+
+		private Document(File file, long length, String contentType, String hash, String token) {
+			this.file = file;
+			this.length = length;
+			this.contentType = contentType;
+			this.hash = hash;
+			this.token = token;
+			this.creationTime = System.currentTimeMillis();
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * @return the type of the document with its charset, if known
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * @return the hash of the content of the document
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		/**
+		 * @return the time the document was stored, in milliseconds
+		 */
+		public long getCreationTime() {
+			return creationTime;
+		}
+	}
+
+	/**
+	 * A reference on a stored document, held by a call until it is disposed
+	 */
+	public static class StoredDocument {
+
+		private final File file;
+
+		private final String sURL;
+
+		private Document document;
+
+		private StoredDocument(Document document) {
+			this.document = document;
+			this.file = document.file;
+			String sName = file.getName();
+			int i = sName.indexOf('.');
+			this.sURL = Property.get("URL_TO_TEMPORARY_FILES") + document.token + (i == -1 ? "" : sName.substring(i));
+		}
+
+		/**
+		 * @return the file holding the document
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return the URL where the document is published, see
+		 *         TemporaryFileAction
+		 */
+		public String getURL() {
+			return sURL;
+		}
+
+		/**
+		 * Releases the reference on the document. Calling this method more
+		 * than once has no effect.
+		 */
+		public void release() {
+			synchronized (mapOfDocument) {
+				if (document == null)
+					return;
+				document.references--;
+				if (document.references == 0)
+					document.releaseTime = System.currentTimeMillis();
+				document = null;
+			}
+		}
+	}
+
+}
@@ -3,12 +3,12 @@
 // Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.input;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
 import java.net.URL;
-import java.util.Date;
+import java.net.URLConnection;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.activation.MimeType;
 
@@ -42,9 +42,36 @@ public class URIInputModule implements InputModule {
 	private String sURI = null;
 
 	/**
-	 * File found at the URI
+	 * Temporary document published for the observers when this module was
+	 * copied from another input
 	 */
-	private File aFile = null;
+	private TemporaryDocumentStore.StoredDocument aStoredDocument = null;
+	
+	/**
+	 * Content of the document, downloaded at most once and shared by the
+	 * input modules created from this one
+	 */
+	private DocumentContent content = null;
+	
+	/**
+	 * Error raised by the download of the document, thrown again to the
+	 * other users of its content instead of downloading it again
+	 */
+	private IOException contentFailure = null;
+	
+	private String sContent = null;
+
+	/**
+	 * Charset of the input this module was copied from, null if the module
+	 * was created from a URI
+	 */
+	private String sCharset = null;
+	
+	/**
+	 * Lock used to download the document only once when several observers
+	 * need its content at the same time
+	 */
+	private final Lock contentLock = new ReentrantLock();
 
 	/**
 	 * Constructor of the URI input module
@@ -78,20 +105,11 @@ public class URIInputModule implements InputModule {
 		logger.trace("Constructor.");
 		logger.debug("InputModule : " + aInputModule + ".");
 		this.aMimeType = aInputModule.getMimeType();
-		final Date aDate = new Date();
-		final String sFileName;
-		sFileName = "tmp_"
-				+ aDate.getTime()
-				+ "_."
-				+ Property.getProps("extensions.properties").getProperty(this.aMimeType
-						.toString());
-		this.aFile = new File(Property.get("PATH_TO_TEMPORARY_FILES")
-				+ sFileName);
-		this.aFile.createNewFile();
-		final PrintWriter aPrintWriter = new PrintWriter(aFile);
-		aPrintWriter.print(aInputModule.getStringContent());
-		aPrintWriter.close();
-		this.sURI = Property.get("URL_TO_TEMPORARY_FILES") + sFileName;
+		// the bytes are stored as is, the observer finds their charset the
+		// same way as for any other document
+		this.sCharset = aInputModule.getCharset();
+		this.aStoredDocument = TemporaryDocumentStore.store(aInputModule.getInputStream(), this.aMimeType, this.sCharset);
+		this.sURI = this.aStoredDocument.getURL();
 	}
 
 	public EnumInputMethod getEnumInputMethod() {
@@ -111,14 +129,88 @@ public class URIInputModule implements InputModule {
 
 	public String getStringContent() throws IOException {
 		logger.trace("getString.");
-		final URL aURL = new URL(this.sURI);
-		InputStream in = aURL.openConnection().getInputStream();
-	    StringBuffer out = new StringBuffer();
-	    byte[] b = new byte[4096];
-	    for (int n; (n = in.read(b)) != -1;) {
-	        out.append(new String(b, 0, n));
-	    }
-	    return out.toString();
+		contentLock.lock();
+		try {
+			if (sContent == null)
+				sContent = getContent().getString();
+			return sContent;
+		} finally {
+			contentLock.unlock();
+		}
+	}
+	
+	public InputStream getInputStream() throws IOException {
+		return getContent().getInputStream();
+	}
+
+	public String getCharset() throws IOException {
+		if (this.sCharset != null)
+			return this.sCharset;
+		return getContent().getCharset();
+	}
+
+	/**
+	 * Returns the content of the document, downloading it on first call. If
+	 * the download failed, its error is thrown again.
+	 * 
+	 * @return the content of the document
+	 * @throws IOException
+	 *             if the document could not be downloaded
+	 */
+	public DocumentContent getContent() throws IOException {
+		contentLock.lock();
+		try {
+			if (content == null) {
+				if (contentFailure != null)
+					throw contentFailure;
+				logger.debug("Downloading document: " + this.sURI);
+				try {
+					final URL aURL = new URL(this.sURI);
+					URLConnection aURLConnection = aURL.openConnection();
+					if (Property.get("DOCUMENT_CONNECT_TIMEOUT") != null)
+						aURLConnection.setConnectTimeout(Integer.parseInt(Property.get("DOCUMENT_CONNECT_TIMEOUT")));
+					if (Property.get("DOCUMENT_READ_TIMEOUT") != null)
+						aURLConnection.setReadTimeout(Integer.parseInt(Property.get("DOCUMENT_READ_TIMEOUT")));
+					content = DocumentContent.read(aURLConnection.getInputStream(), aURLConnection.getContentType());
+				} catch (IOException e) {
+					contentFailure = e;
+					throw e;
+				}
+			}
+			return content;
+		} finally {
+			contentLock.unlock();
+		}
+	}
+	
+	/**
+	 * Records the error raised when the document was downloaded elsewhere
+	 * 
+	 * @param failure
+	 *            the error of the download
+	 */
+	public void setContentFailure(IOException failure) {
+		contentLock.lock();
+		try {
+			this.contentFailure = failure;
+		} finally {
+			contentLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the content of the document when it has already been downloaded
+	 * 
+	 * @param content
+	 *            the content of the document
+	 */
+	public void setContent(DocumentContent content) {
+		contentLock.lock();
+		try {
+			this.content = content;
+		} finally {
+			contentLock.unlock();
+		}
 	}
 
 	public String getURI() {
@@ -131,10 +223,15 @@ public class URIInputModule implements InputModule {
 	 */
 	public void dispose() {
 		logger.trace("dispose");
-		if (null != this.aFile && this.aFile.delete()) {
-			logger.info("File deleted.");
-			this.aFile = null;
+		if (null != this.aStoredDocument) {
+			this.aStoredDocument.release();
+			this.aStoredDocument = null;
+		}
+		if (null != this.content) {
+			this.content.dispose();
+			this.content = null;
 		}
+		this.sContent = null;
 	}
 
 	/**
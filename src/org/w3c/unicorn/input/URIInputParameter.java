@@ -27,6 +27,8 @@ import javax.net.ssl.SSLSession;
 import javax.net.ssl.TrustManager;
 
 import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.w3c.unicorn.contract.EnumInputMethod;
 import org.w3c.unicorn.exceptions.UnicornException;
 import org.w3c.unicorn.request.TrustAllManager;
@@ -35,10 +37,14 @@ import org.w3c.unicorn.util.Property;
 
 public class URIInputParameter extends InputParameter {
 	
+	private static final Log logger = LogFactory.getLog(URIInputParameter.class);
+	
 	private String uri;
 	
 	private int connectTimeOut;
 	
+	private int readTimeOut;
+	
 	private static SSLContext sc;
 	
 	static {
@@ -66,6 +72,10 @@ public class URIInputParameter extends InputParameter {
 			connectTimeOut = Integer.parseInt(Property.get("DOCUMENT_CONNECT_TIMEOUT"));
 		else 
 			connectTimeOut = 0;
+		if (Property.get("DOCUMENT_READ_TIMEOUT") != null)
+			readTimeOut = Integer.parseInt(Property.get("DOCUMENT_READ_TIMEOUT"));
+		else 
+			readTimeOut = 0;
 	}
 	
 	@Override
@@ -103,6 +113,8 @@ public class URIInputParameter extends InputParameter {
 			HttpURLConnection con = (HttpURLConnection) docUrl.openConnection();
 			con.setRequestProperty("User-agent", "W3C_Unicorn/1.0 (http://validator.w3.org/services)");
 			con.setConnectTimeout(connectTimeOut);
+			// the document is read here, before the deadline of the call
+			con.setReadTimeout(readTimeOut);
 			con.setRequestMethod("GET");
 			try {
 				con.connect();
@@ -127,7 +139,18 @@ public class URIInputParameter extends InputParameter {
 			} else {
 				messages.add(new Message(Message.WARNING, "$message_could_not_guess_mimetype"));
 			}
-			inputModule = new URIInputModule(mimeType, uri);
+			URIInputModule uriInputModule = new URIInputModule(mimeType, uri);
+			// keep the document for the observers which need its content
+			// rather than downloading it again
+			try {
+				uriInputModule.setContent(DocumentContent.read(con.getInputStream(), con.getContentType()));
+			} catch (IOException e) {
+				logger.debug("Document not kept: " + e.getMessage());
+				uriInputModule.setContentFailure(e);
+			} finally {
+				con.disconnect();
+			}
+			inputModule = uriInputModule;
 		} catch (MalformedURLException e) {
 			throw new UnicornException(Message.ERROR, "$message_invalid_url_syntax", e.getMessage(), StringEscapeUtils.escapeHtml(uri));
 		} catch (MimeTypeParseException e) {
@@ -3,8 +3,7 @@
 // Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.input;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.File;
 
 import javax.activation.MimeType;
 
@@ -21,8 +20,17 @@ public interface UploadInputModule extends InputModule {
 
 	public String getFileName();
 
-	public InputStream getInputStream() throws IOException;
-	
 	public MimeType getMimeType();
 
+	/**
+	 * @return the size of the uploaded content in bytes, or -1 if unknown
+	 */
+	public long getSize();
+
+	/**
+	 * @return the file holding the uploaded content, or null if it is not
+	 *         stored in a file
+	 */
+	public File getFile();
+
 }
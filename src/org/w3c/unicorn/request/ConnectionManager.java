@@ -0,0 +1,309 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.request;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.response.ResponseFactory;
+import org.w3c.unicorn.util.Property;
+
+/**
+ * Shared HTTP layer used by all the requests to the observers.
+ *
+ * Connections are reused through the keep-alive cache of HttpURLConnection:
+ * a connection goes back to the cache when its response has been read to the
+ * end and closed, which is what PooledConnection.release() does instead of
+ * disconnecting. The number of idle connections kept per host and their idle
+ * timeout are set with OBSERVER_IDLE_CONNECTIONS_PER_HOST and
+ * OBSERVER_IDLE_TIMEOUT, the number of connections in use per host is
+ * limited by OBSERVER_MAX_CONNECTIONS_PER_HOST.
+ */
+public class ConnectionManager {
+
+	private static final Log logger = LogFactory.getLog(ConnectionManager.class);
+
+	/**
+	 * Maximum number of bytes read from an unconsumed response to put its
+	 * connection back in the cache. Bigger responses are disconnected.
+	 */
+	private static final int MAX_DRAIN_SIZE = 65536;
+
+	private static final Map<String, HostPool> mapOfHostPool = new ConcurrentHashMap<String, HostPool>();
+
+	private static final AtomicLong disconnectedCount = new AtomicLong();
+
+	/**
+	 * Configures the keep-alive cache of HttpURLConnection. It must be called
+	 * before the first HTTP connection is opened, as the JDK reads these
+	 * settings only once. They are system properties, shared with everything
+	 * else running in the JVM, so a property already set, for instance on the
+	 * command line or by the servlet container, is left unchanged.
+	 */
+	public static void init() {
+		setDefaultProperty("http.keepAlive", "true");
+		int idleConnections = getIntProperty("OBSERVER_IDLE_CONNECTIONS_PER_HOST", 8);
+		if (idleConnections > 0)
+			setDefaultProperty("http.maxConnections", Integer.toString(idleConnections));
+		int idleTimeout = getIntProperty("OBSERVER_IDLE_TIMEOUT", 30000);
+		if (idleTimeout > 0)
+			setDefaultProperty("http.keepAlive.time.server", Integer.toString(Math.max(1, idleTimeout / 1000)));
+		mapOfHostPool.clear();
+		logger.info("Observer connections: " + idleConnections + " idle connection(s) per host kept for "
+				+ idleTimeout + "ms, at most " + getIntProperty("OBSERVER_MAX_CONNECTIONS_PER_HOST", 32) + " in use per host");
+	}
+
+	private static void setDefaultProperty(String key, String value) {
+		if (System.getProperty(key) == null)
+			System.setProperty(key, value);
+		else if (!System.getProperty(key).equals(value))
+			logger.warn("System property " + key + " is already set to " + System.getProperty(key) + ", " + value + " is ignored");
+	}
+
+	/**
+	 * Opens a connection to an observer, waiting if the maximum number of
+	 * connections to its host is reached. The connect and read timeouts are
+	 * set from OBSERVER_CONNECT_TIMEOUT and OBSERVER_READ_TIMEOUT, and
+	 * compressed responses are accepted (see ResponseFactory). The
+	 * connection must be released once the response has been read.
+	 *
+	 * @param aURL
+	 *            the URL to connect to
+	 * @return the connection
+	 * @throws IOException
+	 *             if the connection could not be opened, or if no connection
+	 *             was available before the connect timeout
+	 */
+	public static PooledConnection open(URL aURL) throws IOException {
+		HostPool pool = getHostPool(aURL);
+		int connectTimeout = getIntProperty("OBSERVER_CONNECT_TIMEOUT", 0);
+		pool.acquire(connectTimeout);
+		try {
+			HttpURLConnection aURLConnection = (HttpURLConnection) aURL.openConnection();
+			aURLConnection.setConnectTimeout(connectTimeout);
+			aURLConnection.setReadTimeout(getIntProperty("OBSERVER_READ_TIMEOUT", 0));
+			aURLConnection.setRequestProperty("Accept-Encoding", ResponseFactory.ACCEPT_ENCODING);
+			return new PooledConnection(aURLConnection, pool);
+		} catch (IOException e) {
+			pool.release();
+			throw e;
+		} catch (RuntimeException e) {
+			pool.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the statistics of the connections by host
+	 */
+	public static String getStatistics() {
+		StringBuilder stats = new StringBuilder();
+		for (HostPool pool : mapOfHostPool.values()) {
+			if (stats.length() > 0)
+				stats.append("; ");
+			stats.append(pool);
+		}
+		stats.append(" (disconnected: ").append(disconnectedCount.get()).append(")");
+		return stats.toString();
+	}
+
+	private static HostPool getHostPool(URL aURL) {
+		String host = aURL.getProtocol() + "://" + aURL.getHost() + ":" + (aURL.getPort() == -1 ? aURL.getDefaultPort() : aURL.getPort());
+		HostPool pool = mapOfHostPool.get(host);
+		if (pool == null) {
+			synchronized (mapOfHostPool) {
+				pool = mapOfHostPool.get(host);
+				if (pool == null) {
+					pool = new HostPool(host, getIntProperty("OBSERVER_MAX_CONNECTIONS_PER_HOST", 32));
+					mapOfHostPool.put(host, pool);
+				}
+			}
+		}
+		return pool;
+	}
+
+	private static int getIntProperty(String key, int defaultValue) {
+		String value = Property.get(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value for " + key + ": " + value + ". Using default value: " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Connections in use to a host
+	 */
+	private static class HostPool {
+
+		private final String host;
+
+		/**
+		 * Limits the number of connections in use, null if unlimited
+		 */
+		private final Semaphore permits;
+
+		private final int maxConnections;
+
+		private final AtomicLong active = new AtomicLong();
+
+		private final AtomicLong waiting = new AtomicLong();
+
+		private final AtomicLong requests = new AtomicLong();
+
+		private HostPool(String host, int maxConnections) {
+			this.host = host;
+			this.maxConnections = maxConnections;
+			this.permits = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
+		}
+
+		private void acquire(int timeout) throws IOException {
+			if (permits != null && !permits.tryAcquire()) {
+				waiting.incrementAndGet();
+				try {
+					if (timeout > 0) {
+						if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+							throw new IOException("No connection available to " + host + " after " + timeout + "ms");
+					} else {
+						permits.acquire();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for a connection to " + host);
+				} finally {
+					waiting.decrementAndGet();
+				}
+			}
+			active.incrementAndGet();
+			requests.incrementAndGet();
+		}
+
+		private void release() {
+			active.decrementAndGet();
+			if (permits != null)
+				permits.release();
+		}
+
+		@Override
+		public String toString() {
+			return host + " active: " + active.get() + "/" + (maxConnections > 0 ? Integer.toString(maxConnections) : "unlimited")
+				+ ", waiting: " + waiting.get() + ", requests: " + requests.get();
+		}
+	}
+
+	/**
+	 * A connection to an observer. release() must be called once the
+	 * response has been read, it puts the connection back in the keep-alive
+	 * cache when possible.
+	 */
+	public static class PooledConnection {
+
+		private final HttpURLConnection aURLConnection;
+
+		private HostPool pool;
+
+		/**
+		 * Whether a response has been received, a connection closed before
+		 * that cannot be reused
+		 */
+		private volatile boolean responded;
+
+		private PooledConnection(HttpURLConnection aURLConnection, HostPool pool) {
+			this.aURLConnection = aURLConnection;
+			this.pool = pool;
+		}
+
+		public HttpURLConnection getConnection() {
+			return aURLConnection;
+		}
+
+		/**
+		 * Sends the request if needed and returns the body of the response.
+		 *
+		 * @return the body of the response
+		 * @throws IOException
+		 *             if the request failed or the server returned an error
+		 */
+		public InputStream getInputStream() throws IOException {
+			try {
+				InputStream in = aURLConnection.getInputStream();
+				responded = true;
+				return in;
+			} catch (IOException e) {
+				responded = aURLConnection.getErrorStream() != null;
+				throw e;
+			}
+		}
+
+		/**
+		 * Reads what is left of the response and closes it, so that the
+		 * connection can be reused. Responses too large to be drained and
+		 * requests interrupted before their response are disconnected.
+		 * Calling this method more than once has no effect.
+		 */
+		public void release() {
+			HostPool aPool;
+			synchronized (this) {
+				aPool = pool;
+				pool = null;
+			}
+			if (aPool == null)
+				return;
+			if (!responded) {
+				disconnectedCount.incrementAndGet();
+				aURLConnection.disconnect();
+				aPool.release();
+				return;
+			}
+			try {
+				InputStream in = aURLConnection.getErrorStream();
+				if (in == null)
+					in = aURLConnection.getInputStream();
+				if (!drain(in)) {
+					disconnectedCount.incrementAndGet();
+					aURLConnection.disconnect();
+				}
+			} catch (IOException e) {
+				// the connection is not reusable
+				disconnectedCount.incrementAndGet();
+				aURLConnection.disconnect();
+				logger.debug("Connection to " + aURLConnection.getURL() + " not reused: " + e.getMessage());
+			} finally {
+				aPool.release();
+			}
+		}
+
+		/**
+		 * Reads the end of a stream and closes it
+		 *
+		 * @return false if the stream is too long to be drained
+		 */
+		private static boolean drain(InputStream in) throws IOException {
+			byte[] buffer = new byte[4096];
+			int total = 0;
+			try {
+				for (int n; (n = in.read(buffer)) != -1;) {
+					total += n;
+					if (total > MAX_DRAIN_SIZE)
+						return false;
+				}
+				return true;
+			} finally {
+				in.close();
+			}
+		}
+	}
+
+}
@@ -5,9 +5,12 @@ package org.w3c.unicorn.request;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
 
 import org.w3c.unicorn.contract.EnumInputMethod;
 import org.w3c.unicorn.input.DirectInputModule;
@@ -81,6 +84,7 @@ public class DirectRequestGET extends Request {
 
 	@Override
 	public Response doRequest() throws UnicornException {
+		ConnectionManager.PooledConnection pooledConnection = null;
 		try {
 			logger.trace("doRequest");
 			URL aURL;
@@ -90,13 +94,33 @@ public class DirectRequestGET extends Request {
 				logger.debug(this.sParameter);
 				aURL = new URL(this.sURL + "?" + this.sParameter);
 			}
-			URLConnection aURLConnection = aURL.openConnection();
+			pooledConnection = ConnectionManager.open(aURL);
+			HttpURLConnection aURLConnection = pooledConnection.getConnection();
+			connection = aURLConnection;
 			aURLConnection.setRequestProperty("Accept-Language", this.sLang);
 			
-			return ResponseFactory.getResponse(aURLConnection.getInputStream(), responseType, sURL.toString(), aURLConnection.getContentEncoding(), observerId);
+			return ResponseFactory.getResponse(pooledConnection.getInputStream(), responseType, sURL.toString(), aURLConnection.getContentType(), aURLConnection.getContentEncoding(), observerId, countsOnly);
 			
 		} catch (IOException e) {
 			throw new UnicornException(new Message(e));
+		} finally {
+			if (pooledConnection != null)
+				pooledConnection.release();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Response> doRequestAsync() {
+		if (!HttpClientTransport.isEnabled())
+			return super.doRequestAsync();
+		logger.trace("doRequestAsync");
+		String sRequestURL = null == this.sParameter ? this.sURL : this.sURL + "?" + this.sParameter;
+		try {
+			return sendAsync(HttpClientTransport.newRequest(new URI(sRequestURL), sLang).GET().build(), sRequestURL);
+		} catch (URISyntaxException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
 		}
 	}
 
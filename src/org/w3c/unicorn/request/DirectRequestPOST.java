@@ -4,14 +4,21 @@
 package org.w3c.unicorn.request;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.w3c.unicorn.contract.EnumInputMethod;
 import org.w3c.unicorn.input.DirectInputModule;
 import org.w3c.unicorn.response.Response;
 import org.w3c.unicorn.response.ResponseFactory;
 import org.w3c.unicorn.util.ClientHttpRequest;
+import org.w3c.unicorn.util.MultipartBodyPublisher;
 import org.w3c.unicorn.util.Message;
 import org.w3c.unicorn.exceptions.UnicornException;
 
@@ -72,16 +79,43 @@ public class DirectRequestPOST extends Request {
 	@Override
 	public Response doRequest() throws UnicornException {
 		logger.trace("doRequest");
+		ConnectionManager.PooledConnection pooledConnection = null;
 		try {
-			ClientHttpRequest request = new ClientHttpRequest(sURL);
+			pooledConnection = ConnectionManager.open(new URL(sURL));
+			ClientHttpRequest request = new ClientHttpRequest(pooledConnection.getConnection());
+			connection = request.getURLConnection();
 			request.setLang(sLang);
+			request.setContentEncoding(requestEncoding);
 			request.setParameters(mapOfParameter);
 			
-			// TODO How to find the response content encoding here ?
-			return ResponseFactory.getResponse(request.post(), responseType, sURL.toString(), null, observerId);
+			request.post();
+			InputStream stream = pooledConnection.getInputStream();
+			HttpURLConnection aURLConnection = pooledConnection.getConnection();
+			return ResponseFactory.getResponse(stream, responseType, sURL.toString(), aURLConnection.getContentType(), aURLConnection.getContentEncoding(), observerId, countsOnly);
 			
 		} catch (IOException e) {
 			throw new UnicornException(new Message(e));
+		} finally {
+			if (pooledConnection != null)
+				pooledConnection.release();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Response> doRequestAsync() {
+		if (!HttpClientTransport.isEnabled())
+			return super.doRequestAsync();
+		logger.trace("doRequestAsync");
+		MultipartBodyPublisher body = new MultipartBodyPublisher();
+		body.addParameters(mapOfParameter);
+		try {
+			return sendAsync(HttpClientTransport.newRequest(new URI(sURL), sLang)
+					.header("Content-Type", body.getContentType())
+					.POST(body.build()).build(), sURL);
+		} catch (URISyntaxException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
 		}
 	}
 
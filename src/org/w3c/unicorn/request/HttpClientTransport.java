@@ -0,0 +1,141 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.request;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.response.ResponseFactory;
+import org.w3c.unicorn.util.Property;
+
+/**
+ * Asynchronous transport to the observers built on java.net.http.HttpClient,
+ * used instead of HttpURLConnection when OBSERVER_TRANSPORT is httpclient.
+ *
+ * A single client is shared by all the calls. It uses HTTP/2 when the
+ * observer supports it, so that all the concurrent requests to a host are
+ * multiplexed over one connection, and falls back to HTTP/1.1 otherwise.
+ * Requests do not hold a thread while waiting for the observer.
+ */
+public class HttpClientTransport {
+
+	private static final Log logger = LogFactory.getLog(HttpClientTransport.class);
+
+	private static HttpClient client;
+
+	private static final AtomicInteger inFlightCount = new AtomicInteger();
+
+	private static final AtomicLong http2Count = new AtomicLong();
+
+	private static final AtomicLong http1Count = new AtomicLong();
+
+	/**
+	 * @return true if the requests to the observers must go through this
+	 *         transport
+	 */
+	public static boolean isEnabled() {
+		return "httpclient".equalsIgnoreCase(Property.get("OBSERVER_TRANSPORT"));
+	}
+
+	/**
+	 * Returns the client, creating it from unicorn.properties the first time.
+	 *
+	 * @return the shared client
+	 */
+	public static synchronized HttpClient getClient() {
+		if (client == null) {
+			HttpClient.Builder builder = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL);
+			int connectTimeout = getIntProperty("OBSERVER_CONNECT_TIMEOUT", 0);
+			if (connectTimeout > 0)
+				builder.connectTimeout(Duration.ofMillis(connectTimeout));
+			client = builder.build();
+			logger.info("Observer requests will use the HttpClient transport");
+		}
+		return client;
+	}
+
+	/**
+	 * Creates a request builder with the settings shared by all the requests:
+	 * read timeout, language and accepted encodings.
+	 *
+	 * @param aURI
+	 *            the URI of the request
+	 * @param sLang
+	 *            the languages accepted by the caller
+	 * @return the builder
+	 */
+	public static HttpRequest.Builder newRequest(URI aURI, String sLang) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(aURI);
+		int readTimeout = getIntProperty("OBSERVER_READ_TIMEOUT", 0);
+		if (readTimeout > 0)
+			builder.timeout(Duration.ofMillis(readTimeout));
+		if (sLang != null)
+			builder.header("Accept-Language", sLang);
+		builder.header("Accept-Encoding", ResponseFactory.ACCEPT_ENCODING);
+		return builder;
+	}
+
+	/**
+	 * Sends a request without blocking.
+	 *
+	 * @param request
+	 *            the request to send
+	 * @return a future completed with the response as soon as its headers
+	 *         are received, the body being read from the returned stream
+	 */
+	public static CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request) {
+		inFlightCount.incrementAndGet();
+		// the future of the client is returned as is, cancelling it aborts the exchange
+		CompletableFuture<HttpResponse<InputStream>> future = getClient().sendAsync(request, BodyHandlers.ofInputStream());
+		future.whenComplete(new BiConsumer<HttpResponse<InputStream>, Throwable>() {
+			public void accept(HttpResponse<InputStream> response, Throwable t) {
+				inFlightCount.decrementAndGet();
+				if (response != null) {
+					if (response.version() == HttpClient.Version.HTTP_2)
+						http2Count.incrementAndGet();
+					else
+						http1Count.incrementAndGet();
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Drops the client, a new one will be created on next use.
+	 */
+	public static synchronized void shutdown() {
+		client = null;
+	}
+
+	public static String getStatistics() {
+		return "in flight: " + inFlightCount.get() + ", HTTP/2 responses: " + http2Count.get()
+			+ ", HTTP/1.1 responses: " + http1Count.get();
+	}
+
+	private static int getIntProperty(String key, int defaultValue) {
+		String value = Property.get(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid value for " + key + ": " + value + ". Using default value: " + defaultValue);
+			return defaultValue;
+		}
+	}
+
+}
@@ -4,15 +4,30 @@
 package org.w3c.unicorn.request;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.Framework;
+import org.w3c.unicorn.RequestExecutor;
 import org.w3c.unicorn.contract.EnumInputMethod;
 import org.w3c.unicorn.input.DirectInputModule;
 import org.w3c.unicorn.input.InputModule;
 import org.w3c.unicorn.input.URIInputModule;
 import org.w3c.unicorn.input.UploadInputModule;
 import org.w3c.unicorn.exceptions.UnicornException;
+import org.w3c.unicorn.response.Response;
+import org.w3c.unicorn.response.ResponseFactory;
+import org.w3c.unicorn.util.Message;
 
 /**
  * 
@@ -35,6 +50,37 @@ public abstract class Request {
 	protected String responseType = null;
 	
 	protected String observerId;
+	
+	/**
+	 * Content-Encoding of the request body, null to send it uncompressed
+	 */
+	protected String requestEncoding;
+	
+	/**
+	 * Whether only the status and the message counts of the response are
+	 * needed
+	 */
+	protected boolean countsOnly = false;
+	
+	/**
+	 * Connection to the observer while the request is in progress
+	 */
+	protected volatile HttpURLConnection connection;
+	
+	/**
+	 * Exchange with the observer while an asynchronous request is in progress
+	 */
+	protected volatile CompletableFuture<?> exchange;
+	
+	/**
+	 * Body of the response of an asynchronous request while it is read
+	 */
+	protected volatile InputStream responseBody;
+	
+	/**
+	 * True once the request has been aborted
+	 */
+	protected volatile boolean aborted = false;
 
 	/**
 	 * Sets the language of the request
@@ -69,10 +115,109 @@ public abstract class Request {
 	 *             odd error occured
 	 * @throws Exception 
 	 */
-	public abstract org.w3c.unicorn.response.Response doRequest() throws UnicornException;
+	public abstract Response doRequest() throws UnicornException;
+
+	/**
+	 * Non-blocking counterpart of doRequest. Requests that support the
+	 * HttpClient transport override it, the default implementation calls
+	 * doRequest on the current thread.
+	 * 
+	 * @return a future completed with the response of the observer, or
+	 *         with the UnicornException describing the failure
+	 */
+	public CompletableFuture<Response> doRequestAsync() {
+		CompletableFuture<Response> future = new CompletableFuture<Response>();
+		try {
+			future.complete(doRequest());
+		} catch (UnicornException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Sends a request with the HttpClient transport. The response is parsed
+	 * by the observer pool once its headers are received.
+	 * 
+	 * @param httpRequest
+	 *            the request to send
+	 * @param requestUri
+	 *            the URI of the request, used in the response and messages
+	 * @return a future completed with the response of the observer
+	 */
+	protected CompletableFuture<Response> sendAsync(HttpRequest httpRequest, final String requestUri) {
+		final String observerName = Framework.mapOfObserver.get(observerId).getName(sLang.split(",")[0]);
+		final String displayUri = requestUri.replaceAll("&?" + Framework.mapOfObserver.get(observerId).getParamOutputName() + "=[^&]*", "");
+		CompletableFuture<HttpResponse<InputStream>> aExchange = HttpClientTransport.send(httpRequest);
+		exchange = aExchange;
+		return aExchange.handleAsync(new BiFunction<HttpResponse<InputStream>, Throwable, Response>() {
+			public Response apply(HttpResponse<InputStream> httpResponse, Throwable t) {
+				if (httpResponse != null)
+					responseBody = httpResponse.body();
+				exchange = null;
+				if (t != null) {
+					Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+					if (cause instanceof HttpConnectTimeoutException || cause instanceof ConnectException)
+						throw new CompletionException(new UnicornException(Message.ERROR, "$message_observer_connect_exception", null, observerName));
+					if (cause instanceof HttpTimeoutException)
+						throw new CompletionException(new UnicornException(Message.ERROR, "$message_observer_read_timeout", null, observerName));
+					if (cause instanceof Exception)
+						throw new CompletionException(new UnicornException(new Message((Exception) cause)));
+					throw new CompletionException(cause);
+				}
+				InputStream body = httpResponse.body();
+				try {
+					// aborted before the body could be closed by abort
+					if (aborted)
+						throw new UnicornException(Message.ERROR, "$message_observer_read_timeout", null, observerName);
+					switch (httpResponse.statusCode()) {
+					case HttpURLConnection.HTTP_NOT_FOUND:
+						throw new UnicornException(Message.ERROR, "$message_observer_not_found", null, observerName, displayUri);
+					case HttpURLConnection.HTTP_INTERNAL_ERROR:
+						throw new UnicornException(Message.ERROR, "$message_observer_internal_error", null, observerName, displayUri);
+					}
+					return ResponseFactory.getResponse(body, responseType, requestUri,
+							httpResponse.headers().firstValue("Content-Type").orElse(null),
+							httpResponse.headers().firstValue("Content-Encoding").orElse(null), observerId, countsOnly);
+				} catch (UnicornException e) {
+					throw new CompletionException(e);
+				} finally {
+					responseBody = null;
+					try {
+						body.close();
+					} catch (IOException e) {
+						logger.debug("Unable to close the response of " + requestUri, e);
+					}
+				}
+			}
+		}, RequestExecutor.getExecutor());
+	}
 
 	public abstract EnumInputMethod getInputMethod();
 
+	/**
+	 * Aborts the request in progress by closing its connection, or the body
+	 * of its response once the headers are received. The thread blocked in
+	 * doRequest or reading the response then fails with an IOException.
+	 */
+	public void abort() {
+		aborted = true;
+		HttpURLConnection aConnection = connection;
+		if (aConnection != null)
+			aConnection.disconnect();
+		CompletableFuture<?> aExchange = exchange;
+		if (aExchange != null)
+			aExchange.cancel(true);
+		InputStream aBody = responseBody;
+		if (aBody != null) {
+			try {
+				aBody.close();
+			} catch (IOException e) {
+				logger.debug("Unable to close the response of observer " + observerId, e);
+			}
+		}
+	}
+
 	/**
 	 * Create a request for the observer
 	 * 
@@ -126,6 +271,36 @@ public abstract class Request {
 		this.responseType = responseType;
 	}
 
+	public String getRequestEncoding() {
+		return requestEncoding;
+	}
+
+	/**
+	 * Sets the Content-Encoding used for the body of the request, if the
+	 * observer declared it in its contract. Only POST requests have a body.
+	 * 
+	 * @param requestEncoding
+	 *            gzip, or null
+	 */
+	public void setRequestEncoding(String requestEncoding) {
+		this.requestEncoding = requestEncoding;
+	}
+
+	public boolean isCountsOnly() {
+		return countsOnly;
+	}
+
+	/**
+	 * Sets whether only the status and the message counts of the response
+	 * are needed, in which case the messages are not created unless asked.
+	 * 
+	 * @param countsOnly
+	 *            true for HEAD requests
+	 */
+	public void setCountsOnly(boolean countsOnly) {
+		this.countsOnly = countsOnly;
+	}
+
 	public String getObserverId() {
 		return observerId;
 	}
@@ -9,8 +9,11 @@ import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
 
 import org.w3c.unicorn.Framework;
 import org.w3c.unicorn.contract.EnumInputMethod;
@@ -18,7 +21,6 @@ import org.w3c.unicorn.exceptions.UnicornException;
 import org.w3c.unicorn.input.URIInputModule;
 import org.w3c.unicorn.response.Response;
 import org.w3c.unicorn.util.Message;
-import org.w3c.unicorn.util.Property;
 import org.w3c.unicorn.response.ResponseFactory;
 
 /**
@@ -37,9 +39,6 @@ public class URIRequest extends Request {
 	 * Parameter of the request
 	 */
 	private String sParameter = null;
-	
-	private int connectTimeOut;
-	private int readTimeOut;
 
 	/**
 	 * Create an URI request
@@ -67,14 +66,6 @@ public class URIRequest extends Request {
 		final URIInputModule aURIInputModule = (URIInputModule) aInputModule;
 		this.addParameter(sInputParameterName, aURIInputModule.getURI());
 		this.setResponseType(responseType);
-		if (Property.get("OBSERVER_CONNECT_TIMEOUT") != null)
-			connectTimeOut = Integer.parseInt(Property.get("OBSERVER_CONNECT_TIMEOUT"));
-		else 
-			connectTimeOut = 0;
-		if (Property.get("OBSERVER_READ_TIMEOUT") != null)
-			readTimeOut = Integer.parseInt(Property.get("OBSERVER_READ_TIMEOUT"));
-		else 
-			readTimeOut = 0;
 	}
 
 	/**
@@ -114,6 +105,7 @@ public class URIRequest extends Request {
 		logger.debug("Parameters : " + this.sParameter + " .");
 		String observerName = Framework.mapOfObserver.get(observerId).getName(sLang.split(",")[0]);
 		final URL aURL;
+		ConnectionManager.PooledConnection pooledConnection = null;
 		try {
 			if (null == this.sParameter) {
 				aURL = new URL(this.sURL);
@@ -122,9 +114,9 @@ public class URIRequest extends Request {
 			}
 			logger.debug("URL : " + aURL + " .");
 			
-			HttpURLConnection aURLConnection = (HttpURLConnection) aURL.openConnection();
-			aURLConnection.setConnectTimeout(connectTimeOut);
-			aURLConnection.setReadTimeout(readTimeOut);
+			pooledConnection = ConnectionManager.open(aURL);
+			HttpURLConnection aURLConnection = pooledConnection.getConnection();
+			connection = aURLConnection;
 			aURLConnection.setRequestProperty("Accept-Language", this.sLang);
 			
 			aURLConnection.connect();
@@ -138,9 +130,7 @@ public class URIRequest extends Request {
 						aURL.toString().replaceAll("&?" + Framework.mapOfObserver.get(observerId).getParamOutputName() + "=[^&]*", ""));
 			}
 			
-			Response res = ResponseFactory.getResponse(aURLConnection.getInputStream(), responseType, aURL.toString(), aURLConnection.getContentEncoding(), observerId);
-			aURLConnection.disconnect();
-			return res;
+			return ResponseFactory.getResponse(pooledConnection.getInputStream(), responseType, aURL.toString(), aURLConnection.getContentType(), aURLConnection.getContentEncoding(), observerId, countsOnly);
 		
 		} catch (MalformedURLException e) {
 			throw new UnicornException(new Message(e));
@@ -157,6 +147,24 @@ public class URIRequest extends Request {
 		} catch (IOException e) {
 			logger.error(e.getMessage(), e);
 			throw new UnicornException(new Message(e));
+		} finally {
+			if (pooledConnection != null)
+				pooledConnection.release();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Response> doRequestAsync() {
+		if (!HttpClientTransport.isEnabled())
+			return super.doRequestAsync();
+		logger.trace("doRequestAsync");
+		String sRequestURL = null == this.sParameter ? this.sURL : this.sURL + "?" + this.sParameter;
+		try {
+			return sendAsync(HttpClientTransport.newRequest(new URI(sRequestURL), sLang).GET().build(), sRequestURL);
+		} catch (URISyntaxException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
 		}
 	}
 
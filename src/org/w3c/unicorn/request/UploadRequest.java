@@ -3,18 +3,25 @@
 // Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.request;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.w3c.unicorn.Framework;
 import org.w3c.unicorn.contract.EnumInputMethod;
 import org.w3c.unicorn.input.UploadInputModule;
 import org.w3c.unicorn.response.Response;
 import org.w3c.unicorn.util.ClientHttpRequest;
+import org.w3c.unicorn.util.MultipartBodyPublisher;
 import org.w3c.unicorn.util.Message;
 import org.w3c.unicorn.exceptions.UnicornException;
 import org.w3c.unicorn.response.ResponseFactory;
@@ -95,14 +102,25 @@ public class UploadRequest extends Request {
 	public Response doRequest() throws UnicornException {
 		logger.trace("doRequest");
 		String observerName = Framework.mapOfObserver.get(observerId).getName(sLang.split(",")[0]);
+		ConnectionManager.PooledConnection pooledConnection = null;
 		try {
-			aClientHttpRequest = new ClientHttpRequest(sURL);
+			pooledConnection = ConnectionManager.open(new URL(sURL));
+			aClientHttpRequest = new ClientHttpRequest(pooledConnection.getConnection());
+			connection = aClientHttpRequest.getURLConnection();
 			logger.debug("Lang : " + this.sLang + ".");
 			aClientHttpRequest.setLang(sLang);
-			aClientHttpRequest.setParameter(this.sInputParameterName,
-					aUploadInputModule.getFileName(), 
-					aUploadInputModule.getInputStream(),
-					aUploadInputModule.getMimeType());
+			aClientHttpRequest.setContentEncoding(requestEncoding);
+			File aFile = aUploadInputModule.getFile();
+			if (aFile != null)
+				aClientHttpRequest.setParameter(this.sInputParameterName,
+						aUploadInputModule.getFileName(), aFile,
+						aUploadInputModule.getMimeType());
+			else
+				aClientHttpRequest.setParameter(this.sInputParameterName,
+						aUploadInputModule.getFileName(), 
+						aUploadInputModule.getInputStream(),
+						aUploadInputModule.getMimeType(),
+						aUploadInputModule.getSize());
 			for (final String sName : mapOfParameter.keySet()) {
 				final String sValue = mapOfParameter.get(sName);
 				logger.trace("addParameter");
@@ -113,9 +131,10 @@ public class UploadRequest extends Request {
 			
 			InputStream stream = null;
 			try {
-				stream = aClientHttpRequest.post();
-				// TODO How to find the response content encoding here ?
-				return ResponseFactory.getResponse(stream, responseType, sURL.toString(), null, observerId);
+				aClientHttpRequest.post();
+				stream = pooledConnection.getInputStream();
+				HttpURLConnection aURLConnection = pooledConnection.getConnection();
+				return ResponseFactory.getResponse(stream, responseType, sURL.toString(), aURLConnection.getContentType(), aURLConnection.getContentEncoding(), observerId, countsOnly);
 			} catch (FileNotFoundException e) {
 				throw new UnicornException(Message.ERROR, "$message_observer_not_found", null, observerName, Framework.mapOfObserver.get(observerId).getIndexURI());
 			} catch (IOException e) {
@@ -129,6 +148,39 @@ public class UploadRequest extends Request {
 			throw new UnicornException(new Message(e));
 		} catch (IOException e) {
 			throw new UnicornException(new Message(e));
+		} finally {
+			if (pooledConnection != null)
+				pooledConnection.release();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Response> doRequestAsync() {
+		if (!HttpClientTransport.isEnabled())
+			return super.doRequestAsync();
+		logger.trace("doRequestAsync");
+		MultipartBodyPublisher body = new MultipartBodyPublisher();
+		File aFile = aUploadInputModule.getFile();
+		try {
+			if (aFile != null) {
+				body.addFile(sInputParameterName, aUploadInputModule.getFileName(), aFile, aUploadInputModule.getMimeType());
+			} else {
+				body.addFile(sInputParameterName, aUploadInputModule.getFileName(), new MultipartBodyPublisher.StreamSupplier() {
+					protected InputStream open() throws IOException {
+						return aUploadInputModule.getInputStream();
+					}
+				}, aUploadInputModule.getMimeType());
+			}
+			body.addParameters(mapOfParameter);
+			return sendAsync(HttpClientTransport.newRequest(new URI(sURL), sLang)
+					.header("Content-Type", body.getContentType())
+					.POST(body.build()).build(), sURL);
+		} catch (FileNotFoundException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
+		} catch (URISyntaxException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
+		} catch (IllegalArgumentException e) {
+			return CompletableFuture.failedFuture(new UnicornException(new Message(e)));
 		}
 	}
 
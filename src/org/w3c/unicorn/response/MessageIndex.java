@@ -0,0 +1,181 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Messages of a response indexed by type, URI and group. The index is built
+ * once all the messages of the response are read, in a single pass, and
+ * answers the queries of the Response interface and of the templates without
+ * scanning the messages again. URIs are kept in the order of their first
+ * message. The messages must not change once indexed.
+ */
+public class MessageIndex {
+
+	private final List<Message> messages;
+
+	private final Map<Integer, List<Message>> mapOfType = new HashMap<Integer, List<Message>>();
+
+	private final Map<String, List<Message>> mapOfURI = new HashMap<String, List<Message>>();
+
+	private final Map<String, List<Message>> mapOfGroup = new HashMap<String, List<Message>>();
+
+	/**
+	 * Messages of each type sorted by URI
+	 */
+	private final Map<Integer, Map<String, Iterable<Message>>> mapOfTypeByURI = new HashMap<Integer, Map<String, Iterable<Message>>>();
+
+	/**
+	 * Messages of each group sorted by URI
+	 */
+	private final Map<String, Map<String, Iterable<Message>>> mapOfGroupByURI = new HashMap<String, Map<String, Iterable<Message>>>();
+
+	/**
+	 * @param messages
+	 *            all the messages of a response, in order
+	 */
+	public MessageIndex(List<? extends Message> messages) {
+		this.messages = Collections.unmodifiableList(new ArrayList<Message>(messages));
+		for (Message message : this.messages) {
+			Integer type = message.getType();
+			String uri = message.getURI();
+			String group = message.getGroupName();
+			add(mapOfType, type, message);
+			add(mapOfURI, uri, message);
+			add(getURIMap(mapOfTypeByURI, type), uri, message);
+			if (group != null) {
+				add(mapOfGroup, group, message);
+				add(getURIMap(mapOfGroupByURI, group), uri, message);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K> void add(Map<K, ? extends Iterable<Message>> map, K key, Message message) {
+		List<Message> list = (List<Message>) map.get(key);
+		if (list == null) {
+			list = new ArrayList<Message>();
+			((Map<K, Iterable<Message>>) map).put(key, list);
+		}
+		list.add(message);
+	}
+
+	private static <K> Map<String, Iterable<Message>> getURIMap(Map<K, Map<String, Iterable<Message>>> map, K key) {
+		Map<String, Iterable<Message>> uriMap = map.get(key);
+		if (uriMap == null) {
+			uriMap = new LinkedHashMap<String, Iterable<Message>>();
+			map.put(key, uriMap);
+		}
+		return uriMap;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Message> get(Map<?, ? extends Iterable<Message>> map, Object key) {
+		if (map == null)
+			return Collections.emptyList();
+		List<Message> list = (List<Message>) map.get(key);
+		if (list == null)
+			return Collections.emptyList();
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * @return all the messages
+	 */
+	public List<Message> getMessages() {
+		return messages;
+	}
+
+	/**
+	 * @param uri
+	 *            the URI of the messages, or null for all URIs
+	 * @param type
+	 *            the type of the messages, or null for all types
+	 * @return the messages of this URI and type
+	 */
+	public List<Message> getMessages(String uri, Integer type) {
+		if (uri == null && type == null)
+			return messages;
+		if (uri == null)
+			return get(mapOfType, type);
+		if (type == null)
+			return get(mapOfURI, uri);
+		return get(mapOfTypeByURI.get(type), uri);
+	}
+
+	/**
+	 * @param group
+	 *            the name of a group
+	 * @return the messages of this group
+	 */
+	public List<Message> getGroupMessages(String group) {
+		return get(mapOfGroup, group);
+	}
+
+	/**
+	 * @param group
+	 *            the name of a group
+	 * @param uri
+	 *            the URI of the messages
+	 * @return the messages of this group and URI
+	 */
+	public List<Message> getGroupMessages(String group, String uri) {
+		return get(mapOfGroupByURI.get(group), uri);
+	}
+
+	/**
+	 * @param type
+	 *            a message type
+	 * @return the messages of this type, sorted by URI
+	 */
+	public Map<String, Iterable<Message>> getURISortedMessages(int type) {
+		Map<String, Iterable<Message>> map = mapOfTypeByURI.get(type);
+		if (map == null)
+			return Collections.emptyMap();
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * @param group
+	 *            the name of a group
+	 * @return the messages of this group, sorted by URI
+	 */
+	public Map<String, Iterable<Message>> getURISortedMessages(String group) {
+		Map<String, Iterable<Message>> map = mapOfGroupByURI.get(group);
+		if (map == null)
+			return Collections.emptyMap();
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * @return the number of messages
+	 */
+	public int getCount() {
+		return messages.size();
+	}
+
+	/**
+	 * @param type
+	 *            a message type
+	 * @return the number of messages of this type
+	 */
+	public int getCount(int type) {
+		return get(mapOfType, type).size();
+	}
+
+	/**
+	 * @param group
+	 *            the name of a group
+	 * @return the number of messages of this group
+	 */
+	public int getCount(String group) {
+		return get(mapOfGroup, group).size();
+	}
+
+}
@@ -38,6 +38,11 @@ public interface Response {
 	public Iterable<Message> getMessages(String uri, Integer type);
 	
 	public Iterable<Message> getMessages(String group);
+	
+	/**
+	 * @return the messages of the response indexed by type, URI and group
+	 */
+	public MessageIndex getMessageIndex();
 
 	public Iterable<Message> getErrorMessages();
 	
@@ -3,19 +3,187 @@
 //Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.response;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.unicorn.Framework;
 import org.w3c.unicorn.exceptions.UnicornException;
+import org.w3c.unicorn.response.impl.CountingResponse;
 import org.w3c.unicorn.response.impl.DefaultResponseXBeans;
+import org.w3c.unicorn.util.Message;
 
 public class ResponseFactory {
 
 	private static final Log logger = LogFactory.getLog(ResponseFactory.class);
 
+	/**
+	 * Value of the Accept-Encoding header sent to the observers
+	 */
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	/**
+	 * Creates the response of an observer from an HTTP response body. The
+	 * body is decompressed according to its Content-Encoding and decoded with
+	 * the charset of its Content-Type.
+	 * 
+	 * @param is
+	 *            the body of the HTTP response
+	 * @param responseType
+	 *            the type of response of the observer
+	 * @param requestUri
+	 *            the URI of the request
+	 * @param contentType
+	 *            the Content-Type header, or null
+	 * @param contentEncoding
+	 *            the Content-Encoding header, or null
+	 * @param observerId
+	 *            the id of the observer
+	 * @return the response
+	 * @throws UnicornException
+	 *             if the body could not be decompressed or parsed
+	 */
+	public static Response getResponse(InputStream is, String responseType, String requestUri, String contentType, String contentEncoding, String observerId) throws UnicornException {
+		return getResponse(is, responseType, requestUri, contentType, contentEncoding, observerId, false);
+	}
+
+	/**
+	 * Creates the response of an observer from an HTTP response body. If
+	 * countsOnly is true and the messages of this type of response can be
+	 * counted, a CountingResponse is returned: the body is scanned for the
+	 * status and the number of messages, and the messages themselves are only
+	 * created if they are asked for. A response selected by the validation
+	 * policy of the observer is always read in full.
+	 * 
+	 * @param is
+	 *            the body of the HTTP response
+	 * @param responseType
+	 *            the type of response of the observer
+	 * @param requestUri
+	 *            the URI of the request
+	 * @param contentType
+	 *            the Content-Type header, or null
+	 * @param contentEncoding
+	 *            the Content-Encoding header, or null
+	 * @param observerId
+	 *            the id of the observer
+	 * @param countsOnly
+	 *            true if only the status and the counts of the response are
+	 *            needed
+	 * @return the response
+	 * @throws UnicornException
+	 *             if the body could not be decompressed or parsed
+	 */
+	public static Response getResponse(InputStream is, String responseType, String requestUri, String contentType, String contentEncoding, String observerId, boolean countsOnly) throws UnicornException {
+		try {
+			InputStream decoded = decode(is, contentEncoding);
+			Class<? extends Response> responseClass = getResponseClass(responseType);
+			if (countsOnly && responseClass != null && CountingResponse.isSupported(responseClass)) {
+				byte[] content;
+				try {
+					content = IOUtils.toByteArray(decoded);
+				} finally {
+					decoded.close();
+				}
+				if (CountingResponse.isValidated(responseClass, observerId)) {
+					// the validation policy selected this response: read it in
+					// full so that it is validated like any other
+					ResponseValidation.setDecision(Boolean.TRUE);
+					try {
+						return getResponse(new ByteArrayInputStream(content), responseType, requestUri, getCharset(contentType), observerId);
+					} finally {
+						ResponseValidation.setDecision(null);
+					}
+				}
+				Response res = new CountingResponse(content, getCharset(contentType), responseType, responseClass, observerId);
+				res.setRequestUri(requestUri);
+				return res;
+			}
+			return getResponse(decoded, responseType, requestUri, getCharset(contentType), observerId);
+		} catch (IOException e) {
+			throw new UnicornException(new Message(e));
+		}
+	}
+
+	private static Class<? extends Response> getResponseClass(String responseType) {
+		if (Framework.responseImpl.get(responseType) != null)
+			return Framework.responseImpl.get(responseType);
+		return Framework.responseImpl.get("default");
+	}
+
+	/**
+	 * Wraps a stream to decompress it according to a Content-Encoding.
+	 * 
+	 * @param is
+	 *            the stream
+	 * @param contentEncoding
+	 *            gzip, deflate, identity or null
+	 * @return the decompressed stream
+	 * @throws IOException
+	 *             if the encoding is unsupported or the stream invalid
+	 */
+	public static InputStream decode(InputStream is, String contentEncoding) throws IOException {
+		if (contentEncoding == null)
+			return is;
+		String encoding = contentEncoding.trim().toLowerCase();
+		if (encoding.equals("") || encoding.equals("identity"))
+			return is;
+		if (encoding.equals("gzip") || encoding.equals("x-gzip"))
+			return new GZIPInputStream(is, 8192);
+		if (encoding.equals("deflate")) {
+			// deflate should be zlib-wrapped but some servers send raw data
+			BufferedInputStream bis = new BufferedInputStream(is, 8192);
+			bis.mark(2);
+			int b0 = bis.read();
+			int b1 = bis.read();
+			bis.reset();
+			boolean zlib = b0 != -1 && b1 != -1 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+			// an InflaterInputStream does not end an Inflater it was given
+			final Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(bis, inflater, 8192) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inflater.end();
+					}
+				}
+			};
+		}
+		throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+	}
+
+	/**
+	 * Extracts the charset parameter of a Content-Type.
+	 * 
+	 * @param contentType
+	 *            the Content-Type header, or null
+	 * @return the charset, or null if none is given
+	 */
+	public static String getCharset(String contentType) {
+		if (contentType == null)
+			return null;
+		for (String param : contentType.split(";")) {
+			int i = param.indexOf('=');
+			if (i != -1 && param.substring(0, i).trim().equalsIgnoreCase("charset")) {
+				String charset = param.substring(i + 1).trim();
+				if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\""))
+					charset = charset.substring(1, charset.length() - 1);
+				return charset.length() == 0 ? null : charset;
+			}
+		}
+		return null;
+	}
+
 	public static Response getResponse(InputStream is, String responseType, String requestUri, String charset, String observerId) throws UnicornException {
 		
 		Response res;
@@ -0,0 +1,260 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.response;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.Framework;
+import org.w3c.unicorn.contract.Observer;
+import org.w3c.unicorn.response.impl.StaxResponse;
+import org.w3c.unicorn.util.Property;
+import org.xml.sax.SAXException;
+
+/**
+ * Policy deciding which responses of an observer are validated against
+ * observer-response.xsd: all of them, one in N, or none. The policy of an
+ * observer is given by a responseValidation doc element of its contract and
+ * can be overridden in observers.properties with an
+ * &lt;observer&gt;.responseValidation key. The values are "always", "off" and
+ * "sampled" or "sampled:N", the default being RESPONSE_VALIDATION, or
+ * STAX_RESPONSE_VALIDATION for the observers read by StaxResponse.
+ *
+ * The compiled schema and the counts of validated responses and schema
+ * errors are shared by all observers.
+ */
+public class ResponseValidation {
+
+	private static final Log logger = LogFactory.getLog(ResponseValidation.class);
+
+	public enum Mode {
+		ALWAYS, SAMPLED, OFF
+	}
+
+	/**
+	 * One response in DEFAULT_SAMPLE_RATE is validated when no rate is given
+	 */
+	public static final int DEFAULT_SAMPLE_RATE = 10;
+
+	private static Schema schema;
+
+	private static boolean schemaFailed = false;
+
+	private static final AtomicLong validatedCount = new AtomicLong();
+
+	private static final AtomicLong skippedCount = new AtomicLong();
+
+	private static final AtomicLong invalidCount = new AtomicLong();
+
+	/**
+	 * Number of invalid responses of each observer
+	 */
+	private static final Map<String, AtomicLong> mapOfInvalidCount = new TreeMap<String, AtomicLong>();
+
+	/**
+	 * Decision already taken for the response being read by this thread
+	 */
+	private static final ThreadLocal<Boolean> decision = new ThreadLocal<Boolean>();
+
+	private Mode mode;
+
+	private int rate;
+
+	private final AtomicLong responseCount = new AtomicLong();
+
+	public ResponseValidation(Mode mode, int rate) {
+		this.mode = mode;
+		this.rate = rate < 1 ? 1 : rate;
+	}
+
+	/**
+	 * Reads a policy.
+	 *
+	 * @param value
+	 *            always, off, sampled or sampled:N
+	 * @return the policy, or null if value is null or invalid
+	 */
+	public static ResponseValidation parse(String value) {
+		if (value == null)
+			return null;
+		String policy = value.trim().toLowerCase();
+		if (policy.equals("always"))
+			return new ResponseValidation(Mode.ALWAYS, 1);
+		if (policy.equals("off"))
+			return new ResponseValidation(Mode.OFF, 1);
+		if (policy.equals("sampled"))
+			return new ResponseValidation(Mode.SAMPLED, DEFAULT_SAMPLE_RATE);
+		if (policy.startsWith("sampled:")) {
+			try {
+				return new ResponseValidation(Mode.SAMPLED, Integer.parseInt(policy.substring("sampled:".length()).trim()));
+			} catch (NumberFormatException e) {
+				// invalid rate
+			}
+		}
+		logger.warn("Invalid response validation policy: " + value);
+		return null;
+	}
+
+	/**
+	 * @return the policy given by RESPONSE_VALIDATION, ALWAYS if it is not set
+	 */
+	public static ResponseValidation getDefault() {
+		ResponseValidation validation = parse(Property.get("RESPONSE_VALIDATION"));
+		if (validation == null)
+			return new ResponseValidation(Mode.ALWAYS, 1);
+		return validation;
+	}
+
+	/**
+	 * Returns the default policy of the observers whose responses are read by
+	 * a class. StaxResponse buffers a response to validate it before reading
+	 * it, so its observers use STAX_RESPONSE_VALIDATION, sampled if it is not
+	 * set.
+	 *
+	 * @param responseClass
+	 *            the Response implementation of the observer, or null
+	 * @return the default policy for this class
+	 */
+	public static ResponseValidation getDefault(Class<? extends Response> responseClass) {
+		if (responseClass == null || !StaxResponse.class.isAssignableFrom(responseClass))
+			return getDefault();
+		ResponseValidation validation = parse(Property.get("STAX_RESPONSE_VALIDATION"));
+		if (validation == null)
+			return new ResponseValidation(Mode.SAMPLED, DEFAULT_SAMPLE_RATE);
+		return validation;
+	}
+
+	/**
+	 * Decides whether the next response of an observer is validated, and
+	 * counts the skipped responses.
+	 *
+	 * @param observerID
+	 *            the id of the observer
+	 * @return true if the response must be validated
+	 */
+	public static boolean isValidated(String observerID) {
+		Boolean decided = decision.get();
+		if (decided != null) {
+			decision.remove();
+			return decided.booleanValue();
+		}
+		Observer observer = observerID == null ? null : Framework.mapOfObserver.get(observerID);
+		ResponseValidation validation = observer == null ? null : observer.getResponseValidation();
+		if (validation == null || validation.next()) {
+			validatedCount.incrementAndGet();
+			return true;
+		}
+		skippedCount.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Gives the result of the next call to isValidated on this thread, for a
+	 * response whose policy was applied before it is read, so that it is not
+	 * counted nor sampled twice.
+	 *
+	 * @param validated
+	 *            the decision, or null to clear it
+	 */
+	public static void setDecision(Boolean validated) {
+		if (validated == null)
+			decision.remove();
+		else
+			decision.set(validated);
+	}
+
+	/**
+	 * Counts a response which does not match the schema.
+	 *
+	 * @param observerID
+	 *            the id of the observer
+	 */
+	public static void addInvalid(String observerID) {
+		invalidCount.incrementAndGet();
+		synchronized (mapOfInvalidCount) {
+			AtomicLong count = mapOfInvalidCount.get(observerID);
+			if (count == null) {
+				count = new AtomicLong();
+				mapOfInvalidCount.put(observerID, count);
+			}
+			count.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns observer-response.xsd, compiled on first call. The XML
+	 * namespace schema is loaded from the same directory so that no network
+	 * access is needed.
+	 *
+	 * @return the schema, or null if it could not be compiled
+	 */
+	public static synchronized Schema getSchema() {
+		if (schema == null && !schemaFailed) {
+			File directory = new File(Property.get("PATH_TO_RESOURCES"), "schemas");
+			try {
+				SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+				schema = factory.newSchema(new Source[] {
+						new StreamSource(new File(directory, "xml.xsd")),
+						new StreamSource(new File(directory, "observer-response.xsd"))});
+				logger.debug("Observer response schema compiled");
+			} catch (SAXException e) {
+				// do not try again on each response
+				schemaFailed = true;
+				logger.error("Unable to compile observer-response.xsd in " + directory + ". Responses will not be validated.", e);
+			}
+		}
+		return schema;
+	}
+
+	public static String getStatistics() {
+		String invalid;
+		synchronized (mapOfInvalidCount) {
+			invalid = mapOfInvalidCount.toString();
+		}
+		return "validated: " + validatedCount.get() + ", skipped: " + skippedCount.get()
+			+ ", invalid: " + invalidCount.get() + " " + invalid;
+	}
+
+	/**
+	 * @return true if the next response must be validated
+	 */
+	public boolean next() {
+		switch (mode) {
+		case OFF:
+			return false;
+		case SAMPLED:
+			return responseCount.getAndIncrement() % rate == 0;
+		default:
+			return true;
+		}
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public int getRate() {
+		return rate;
+	}
+
+	@Override
+	public String toString() {
+		switch (mode) {
+		case SAMPLED:
+			return "sampled:" + rate;
+		default:
+			return mode.toString().toLowerCase();
+		}
+	}
+
+}
@@ -0,0 +1,580 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.response.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.Framework;
+import org.w3c.unicorn.exceptions.UnicornException;
+import org.w3c.unicorn.response.Group;
+import org.w3c.unicorn.response.Message;
+import org.w3c.unicorn.response.MessageIndex;
+import org.w3c.unicorn.response.Response;
+import org.w3c.unicorn.response.ResponseFactory;
+import org.w3c.unicorn.response.ResponseValidation;
+import org.w3c.unicorn.util.Property;
+
+/**
+ * Response used when only the status and the number of messages of each
+ * type are needed, as for HEAD requests. The body of the observer is scanned
+ * once to count the messages without creating them. It is kept so that the
+ * full response can be created if anything else is asked, such as the
+ * messages or an XPath condition.
+ */
+public class CountingResponse implements Response {
+
+	private static final Log logger = LogFactory.getLog(CountingResponse.class);
+
+	private static final String NAMESPACE = "http://www.w3.org/2009/10/unicorn/observationresponse";
+
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+	static {
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private static DatatypeFactory datatypeFactory;
+
+	/**
+	 * Body of the observer, until the full response is created
+	 */
+	private byte[] content;
+
+	private String charset;
+
+	private String responseType;
+
+	private Response fullResponse;
+
+	private int errorCount = 0;
+	private int warningCount = 0;
+	private int infoCount = 0;
+
+	private String uri;
+
+	private String lang;
+
+	private String statusValue;
+
+	private Integer rating;
+
+	/**
+	 * Whether the body is a validator.nu JSON response, which has no status
+	 */
+	private boolean json;
+
+	private String requestURI;
+
+	private String observerID;
+
+	/**
+	 * @param responseClass
+	 *            a Response implementation
+	 * @return true if the messages of the responses read by this class can
+	 *         be counted
+	 */
+	public static boolean isSupported(Class<? extends Response> responseClass) {
+		return DefaultResponseXBeans.class.isAssignableFrom(responseClass)
+			|| StaxResponse.class.isAssignableFrom(responseClass)
+			|| ValidatorNuResponse.class.isAssignableFrom(responseClass);
+	}
+
+	/**
+	 * Applies the validation policy of an observer to a response which would
+	 * be counted. Responses of a class which does not validate them are never
+	 * selected.
+	 *
+	 * @param responseClass
+	 *            a Response implementation
+	 * @param observerID
+	 *            the id of the observer
+	 * @return true if the response must be read in full to be validated
+	 */
+	public static boolean isValidated(Class<? extends Response> responseClass, String observerID) {
+		if (ValidatorNuResponse.class.isAssignableFrom(responseClass))
+			return false;
+		if (StaxResponse.class.isAssignableFrom(responseClass) && ResponseValidation.getSchema() == null)
+			return false;
+		return ResponseValidation.isValidated(observerID);
+	}
+
+	/**
+	 * Counts the messages of a response.
+	 *
+	 * @param content
+	 *            the decompressed body of the observer
+	 * @param charset
+	 *            the charset of the body, or null
+	 * @param responseType
+	 *            the type of response of the observer, used to create the
+	 *            full response
+	 * @param responseClass
+	 *            the Response implementation of this type
+	 * @param observerID
+	 *            the id of the observer
+	 * @throws UnicornException
+	 *             if the body could not be read
+	 */
+	public CountingResponse(byte[] content, String charset, String responseType,
+			Class<? extends Response> responseClass, String observerID) throws UnicornException {
+		this.content = content;
+		this.charset = charset;
+		this.responseType = responseType;
+		this.observerID = observerID;
+		this.json = ValidatorNuResponse.class.isAssignableFrom(responseClass);
+		if (json)
+			countJson();
+		else
+			countXml(StaxResponse.class.isAssignableFrom(responseClass));
+	}
+
+	/**
+	 * Counts the messages of an observationresponse. If strict is true, the
+	 * response is checked as StaxResponse reads it, so that a response which
+	 * StaxResponse rejects is not counted.
+	 */
+	private void countXml(boolean strict) throws UnicornException {
+		XMLStreamReader reader = null;
+		try {
+			synchronized (inputFactory) {
+				// StaxResponse reads a response without charset as UTF-8
+				if (strict)
+					reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(content), charset == null ? "UTF-8" : charset);
+				else if (charset == null)
+					reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(content));
+				else
+					reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(content), charset);
+			}
+			reader.nextTag();
+			if (!"observationresponse".equals(reader.getLocalName()) || !NAMESPACE.equals(reader.getNamespaceURI()))
+				throw new UnicornException(new org.w3c.unicorn.util.Message(org.w3c.unicorn.util.Message.ERROR, "$message_response_invalid_schema", null, Framework.mapOfObserver.get(observerID).getName(Property.get("DEFAULT_LANGUAGE"))));
+			uri = reader.getAttributeValue(null, "ref");
+			lang = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+			if (strict) {
+				countStrict(reader);
+				return;
+			}
+			while (reader.hasNext()) {
+				if (reader.next() != XMLStreamConstants.START_ELEMENT || !NAMESPACE.equals(reader.getNamespaceURI()))
+					continue;
+				String name = reader.getLocalName();
+				if ("message".equals(name)) {
+					String type = reader.getAttributeValue(null, "type");
+					if ("error".equalsIgnoreCase(type))
+						errorCount++;
+					else if ("warning".equalsIgnoreCase(type))
+						warningCount++;
+					else if ("info".equalsIgnoreCase(type))
+						infoCount++;
+				} else if ("status".equals(name)) {
+					// if there are two status elements, only the last one is used
+					statusValue = reader.getAttributeValue(null, "value");
+					String sRating = reader.getAttributeValue(null, "rating");
+					try {
+						rating = sRating == null ? null : Integer.valueOf(sRating.trim());
+					} catch (NumberFormatException e) {
+						rating = null;
+					}
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					logger.debug("Error closing response: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Counts the messages of the root element with the checks of
+	 * StaxResponse.parse, skipping the content of the messages.
+	 */
+	private void countStrict(XMLStreamReader reader) throws XMLStreamException, UnicornException {
+		if (uri == null || lang == null)
+			throw invalidResponse("Attributes ref and xml:lang are required on observationresponse");
+		String sDate = reader.getAttributeValue(null, "date");
+		if (sDate != null)
+			checkDate(sDate);
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			if ("status".equals(name)) {
+				// if there are two status elements, only the last one is used
+				statusValue = reader.getAttributeValue(null, "value");
+				rating = checkInteger(reader.getAttributeValue(null, "rating"));
+				skipElement(reader);
+			} else if ("message".equals(name)) {
+				countMessage(reader);
+			} else if ("list".equals(name)) {
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					if (!"message".equals(reader.getLocalName()))
+						throw invalidResponse("Unexpected element in list: " + reader.getLocalName());
+					countMessage(reader);
+				}
+			} else if ("group".equals(name)) {
+				if (reader.getAttributeValue(null, "name") == null)
+					throw invalidResponse("Group without name");
+				skipElement(reader);
+			} else {
+				throw invalidResponse("Unexpected element: " + name);
+			}
+		}
+	}
+
+	private void countMessage(XMLStreamReader reader) throws XMLStreamException, UnicornException {
+		String type = reader.getAttributeValue(null, "type");
+		if (!"error".equalsIgnoreCase(type) && !"warning".equalsIgnoreCase(type) && !"info".equalsIgnoreCase(type))
+			throw invalidResponse("Invalid message type: " + type);
+		checkInteger(reader.getAttributeValue(null, "level"));
+		boolean title = false;
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			if ("context".equals(name)) {
+				checkInteger(reader.getAttributeValue(null, "line"));
+				checkInteger(reader.getAttributeValue(null, "column"));
+				checkInteger(reader.getAttributeValue(null, "offset"));
+				checkRange(reader.getAttributeValue(null, "line-range"));
+				checkRange(reader.getAttributeValue(null, "column-range"));
+			} else if ("title".equals(name)) {
+				title = true;
+			}
+			skipElement(reader);
+		}
+		if (!title)
+			throw invalidResponse("Message without title");
+		if ("error".equalsIgnoreCase(type))
+			errorCount++;
+		else if ("warning".equalsIgnoreCase(type))
+			warningCount++;
+		else
+			infoCount++;
+	}
+
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private Integer checkInteger(String value) throws UnicornException {
+		if (value == null)
+			return null;
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			throw invalidResponse("Invalid number: " + value);
+		}
+	}
+
+	private void checkRange(String value) throws UnicornException {
+		if (value == null)
+			return;
+		String[] values = value.split("-");
+		if (values.length != 2)
+			throw invalidResponse("Invalid range: " + value);
+		checkInteger(values[0]);
+		checkInteger(values[1]);
+	}
+
+	private void checkDate(String value) throws UnicornException {
+		try {
+			synchronized (CountingResponse.class) {
+				if (datatypeFactory == null)
+					datatypeFactory = DatatypeFactory.newInstance();
+			}
+			datatypeFactory.newXMLGregorianCalendar(value.trim());
+		} catch (DatatypeConfigurationException e) {
+			logger.error("Unable to parse the date of the response", e);
+		} catch (IllegalArgumentException e) {
+			throw invalidResponse("Invalid date: " + value);
+		}
+	}
+
+	private void countJson() throws UnicornException {
+		JsonParser parser = null;
+		try {
+			parser = Json.createParser(new InputStreamReader(new ByteArrayInputStream(content), charset == null ? "UTF-8" : charset));
+			int depth = 0;
+			String key = null;
+			// key and values of the current message (depth 3: root, messages array, message)
+			boolean inMessages = false;
+			String type = null;
+			String subType = null;
+			while (parser.hasNext()) {
+				switch (parser.next()) {
+				case START_OBJECT:
+				case START_ARRAY:
+					depth++;
+					if (depth == 2 && "messages".equals(key))
+						inMessages = true;
+					if (depth == 3 && inMessages) {
+						type = null;
+						subType = null;
+					}
+					break;
+				case END_OBJECT:
+				case END_ARRAY:
+					if (depth == 3 && inMessages) {
+						if ("error".equals(type))
+							errorCount++;
+						else if ("info".equals(type) && "warning".equals(subType))
+							warningCount++;
+						else
+							infoCount++;
+					}
+					if (depth == 2)
+						inMessages = false;
+					depth--;
+					break;
+				case KEY_NAME:
+					key = parser.getString();
+					break;
+				case VALUE_STRING:
+					if (depth == 1 && "url".equals(key))
+						uri = parser.getString();
+					else if (depth == 3 && inMessages && "type".equals(key))
+						type = parser.getString();
+					else if (depth == 3 && inMessages && "subtype".equals(key))
+						subType = parser.getString();
+					break;
+				default:
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
+		} catch (JsonException e) {
+			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
+		} finally {
+			if (parser != null)
+				parser.close();
+		}
+	}
+
+	private UnicornException invalidResponse(String content) {
+		return new UnicornException(new org.w3c.unicorn.util.Message(org.w3c.unicorn.util.Message.ERROR, "$message_response_validation_error", content, Framework.mapOfObserver.get(observerID).getName(Property.get("DEFAULT_LANGUAGE"))));
+	}
+
+	/**
+	 * Creates the full response from the kept body on first call.
+	 *
+	 * @return the full response, or null if it could not be created
+	 */
+	protected synchronized Response getFullResponse() {
+		if (fullResponse == null && content != null) {
+			logger.debug("Full response needed for observer " + observerID);
+			// the validation policy was already applied to this response
+			ResponseValidation.setDecision(Boolean.FALSE);
+			try {
+				fullResponse = ResponseFactory.getResponse(new ByteArrayInputStream(content), responseType, requestURI, charset, observerID);
+			} catch (UnicornException e) {
+				logger.error("Unable to read the response of observer " + observerID, e);
+			} finally {
+				ResponseValidation.setDecision(null);
+			}
+			content = null;
+		}
+		return fullResponse;
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	public int getWarningCount() {
+		return warningCount;
+	}
+
+	public int getInfoCount() {
+		return infoCount;
+	}
+
+	public int getStatus() {
+		if (json)
+			return (errorCount + warningCount + infoCount == 0) ? PASSED : FAILED;
+		if (statusValue == null) {
+			if (getErrorCount() > 0)
+				return FAILED;
+			return UNDEF;
+		} else if (statusValue.equalsIgnoreCase("passed")) {
+			return PASSED;
+		} else if (statusValue.equalsIgnoreCase("failed")) {
+			return FAILED;
+		} else {
+			return UNDEF;
+		}
+	}
+
+	public Integer getRating() {
+		return rating;
+	}
+
+	public boolean isSetRating() {
+		if (getRating() == null)
+			return false;
+		return true;
+	}
+
+	public boolean isPassed() {
+		if (getStatus() == PASSED)
+			return true;
+		return false;
+	}
+
+	public boolean isUndef() {
+		if (getStatus() == UNDEF)
+			return true;
+		return false;
+	}
+
+	public String getURI() {
+		return uri;
+	}
+
+	public String getLang() {
+		return lang;
+	}
+
+	public Date getDate() {
+		Response response = getFullResponse();
+		return response == null ? null : response.getDate();
+	}
+
+	public List<Group> getGroups() {
+		Response response = getFullResponse();
+		return response == null ? new ArrayList<Group>() : response.getGroups();
+	}
+
+	public List<Group> getGroupChildren(Group group) {
+		Response response = getFullResponse();
+		return response == null ? new ArrayList<Group>() : response.getGroupChildren(group);
+	}
+
+	public boolean hasGroups() {
+		Response response = getFullResponse();
+		return response == null ? false : response.hasGroups();
+	}
+
+	public Map<String, Iterable<Message>> getURISortedMessages(int type) {
+		Response response = getFullResponse();
+		return response == null ? Collections.<String, Iterable<Message>>emptyMap() : response.getURISortedMessages(type);
+	}
+
+	public Map<String, Iterable<Message>> getURISortedMessages(String group) {
+		Response response = getFullResponse();
+		return response == null ? Collections.<String, Iterable<Message>>emptyMap() : response.getURISortedMessages(group);
+	}
+
+	public Iterable<Message> getMessages() {
+		Response response = getFullResponse();
+		return response == null ? Collections.<Message>emptyList() : response.getMessages();
+	}
+
+	public Iterable<Message> getMessages(String uri, Integer type) {
+		Response response = getFullResponse();
+		return response == null ? Collections.<Message>emptyList() : response.getMessages(uri, type);
+	}
+
+	public Iterable<Message> getMessages(String group) {
+		Response response = getFullResponse();
+		return response == null ? Collections.<Message>emptyList() : response.getMessages(group);
+	}
+
+	public MessageIndex getMessageIndex() {
+		Response response = getFullResponse();
+		return response == null ? new MessageIndex(Collections.<Message>emptyList()) : response.getMessageIndex();
+	}
+
+	public Iterable<Message> getErrorMessages() {
+		return getMessages(null, Message.ERROR);
+	}
+
+	public Iterable<Message> getErrorMessages(String uri) {
+		return getMessages(uri, Message.ERROR);
+	}
+
+	public Iterable<Message> getWarningMessages() {
+		return getMessages(null, Message.WARNING);
+	}
+
+	public Iterable<Message> getWarningMessages(String uri) {
+		return getMessages(uri, Message.WARNING);
+	}
+
+	public Iterable<Message> getInfoMessages() {
+		return getMessages(null, Message.INFO);
+	}
+
+	public Iterable<Message> getInfoMessages(String uri) {
+		return getMessages(uri, Message.INFO);
+	}
+
+	public String[] selectPath(String xpath) {
+		Response response = getFullResponse();
+		return response == null ? new String[0] : response.selectPath(xpath);
+	}
+
+	public boolean evaluateXPath(String xpathQuery) {
+		Response response = getFullResponse();
+		return response == null ? false : response.evaluateXPath(xpathQuery);
+	}
+
+	public String getObserverID() {
+		return observerID;
+	}
+
+	public void setObserverId(String obsId) {
+		observerID = obsId;
+	}
+
+	public void setRequestUri(String uri) {
+		requestURI = uri;
+	}
+
+	public String getRequestUri() {
+		return requestURI;
+	}
+
+	public String getHTMLRequestUri() {
+		if (requestURI != null) {
+			String outputParamName = Framework.mapOfObserver.get(observerID).getParamOutputName();
+			return requestURI.replaceAll("&?" + outputParamName + "=[^&]*", "");
+		} else {
+			return null;
+		}
+	}
+
+	public String getHTMLIndexUri() {
+		return Framework.mapOfObserver.get(observerID).getIndexURI();
+	}
+
+}
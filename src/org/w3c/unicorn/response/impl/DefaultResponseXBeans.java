@@ -8,8 +8,6 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
-import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -26,7 +24,9 @@ import org.w3.x2009.x10.unicorn.observationresponse.ObservationresponseDocument.
 import org.w3c.unicorn.Framework;
 import org.w3c.unicorn.response.Group;
 import org.w3c.unicorn.response.Message;
+import org.w3c.unicorn.response.MessageIndex;
 import org.w3c.unicorn.response.Response;
+import org.w3c.unicorn.response.ResponseValidation;
 import org.w3c.unicorn.util.Property;
 import org.w3c.unicorn.exceptions.UnicornException;
 
@@ -35,10 +35,7 @@ public class DefaultResponseXBeans implements Response {
 	private ObservationresponseDocument ord;
 	private Observationresponse or;
 	
-	private List<Message> messages = new ArrayList<Message>();
-	private int errorCount = 0;
-	private int warningCount = 0;
-	private int infoCount = 0;
+	private MessageIndex index;
 	
 	private List<Group> groups = new ArrayList<Group>();
 	
@@ -60,7 +57,8 @@ public class DefaultResponseXBeans implements Response {
 			ord = ObservationresponseDocument.Factory.parse(is, new XmlOptions().setCharacterEncoding(charset));
 			is.close();
 			or = ord.getObservationresponse();
-			if (!or.validate(xo)) {
+			if (ResponseValidation.isValidated(observerID) && !or.validate(xo)) {
+				ResponseValidation.addInvalid(observerID);
 				String content = "";
 				content += "Errors: " + errorList.size();
 			    for (XmlError error : errorList) {
@@ -77,6 +75,8 @@ public class DefaultResponseXBeans implements Response {
 			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
 		}
 		
+		List<Message> messages = new ArrayList<Message>();
+		
 		for (GroupType group : or.getGroupList()) {
 			if (group.getLang() == null)
 				group.setLang(getLang());
@@ -96,17 +96,6 @@ public class DefaultResponseXBeans implements Response {
 				}
 				if (list.isSetGroup() && m.getGroupName() == null)
 					m.setGroupName(list.getGroup());
-				switch (m.getType()) {
-				case Message.ERROR:
-					errorCount++;
-					break;
-				case Message.WARNING:
-					warningCount++;
-					break;
-				case Message.INFO:
-					infoCount++;
-					break;
-				}
 				messages.add(m);
 			}
 		}
@@ -119,24 +108,13 @@ public class DefaultResponseXBeans implements Response {
 			if (m.getURI() == null)
 				m.setURI(getURI());
 			
-			switch (m.getType()) {
-			case Message.ERROR:
-				errorCount++;
-				break;
-			case Message.WARNING:
-				warningCount++;
-				break;
-			case Message.INFO:
-				infoCount++;
-				break;
-			}
-			
 			if (hasGroups() && !message.isSetGroup())
 				m.setGroupName(groups.get(0).getName());
 			
 			messages.add(m);
 		}
 		
+		index = new MessageIndex(messages);
 	}
 	
 	public Date getDate() {
@@ -177,7 +155,7 @@ public class DefaultResponseXBeans implements Response {
 	}
 	
 	public Iterable<Message> getMessages() {
-		return messages;
+		return index.getMessages();
 	}
 	
 	public Iterable<Message> getErrorMessages() {
@@ -193,15 +171,15 @@ public class DefaultResponseXBeans implements Response {
 	}
 	
 	public int getErrorCount() {
-		return errorCount;
+		return index.getCount(Message.ERROR);
 	}
 	
 	public int getWarningCount() {
-		return warningCount;
+		return index.getCount(Message.WARNING);
 	}
 	
 	public int getInfoCount() {
-		return infoCount;
+		return index.getCount(Message.INFO);
 	}
 
 	public List<Group> getGroups() {		
@@ -280,74 +258,6 @@ public class DefaultResponseXBeans implements Response {
 		return false;
 	}
 
-	public Iterable<Message> getMessages(String uri, int type) {
-		return new MessageIterable(uri, type, null);
-	}
-	
-	protected class MessageIterable implements Iterable<Message> {
-
-		private int index = 0;
-		private Integer type;
-		private String uri;
-		private String group;
-		
-		public MessageIterable(String uri, Integer type, String group) {
-			this.uri = uri;
-			this.type = type;
-			this.group = group;
-		}
-		
-		public int size() {
-			index = 0;
-			int size = 0;
-			while (index < messages.size()) {
-				if ((uri == null || uri.equals(messages.get(index).getURI())) && 
-					(type == null || messages.get(index).getType() == type) &&
-					(group == null || group.equals(messages.get(index).getGroupName()))) {
-					index++;
-					size++;
-				}
-				index++;
-			}
-			index = 0;
-			return size;
-		}
-		
-		public Iterator<Message> iterator() {
-			return new Iterator<Message>() {
-				public boolean hasNext() {
-					int x = index;
-					while (x < messages.size()) {
-						if ((uri == null || uri.equals(messages.get(x).getURI())) && 
-							(type == null || messages.get(x).getType() == type) &&
-							(group == null || group.equals(messages.get(x).getGroupName())))
-							
-							return true;
-						x++;
-					}
-					return false;
-				}
-
-				public Message next() {
-					while (index < messages.size()) {
-						if ((uri == null || uri.equals(messages.get(index).getURI())) && 
-							(type == null || messages.get(index).getType() == type) &&
-							(group == null || group.equals(messages.get(index).getGroupName()))) {
-							index++;
-							return messages.get(index - 1);
-						}
-						index++;
-					}
-					return null;
-				}
-
-				public void remove() {
-					return;
-				}
-			};
-		}
-	}
-
 	public Iterable<Message> getErrorMessages(String uri) {
 		return getMessages(uri, Message.ERROR);
 	}
@@ -357,20 +267,11 @@ public class DefaultResponseXBeans implements Response {
 	}
 
 	public Iterable<Message> getMessages(String uri, Integer type) {
-		return new MessageIterable(uri, type, null);
+		return index.getMessages(uri, type);
 	}
 
 	public Map<String, Iterable<Message>> getURISortedMessages(int type) {
-		List<String> uris = new ArrayList<String>();
-		for (Message mess : getMessages(null, type)) {
-			if (!uris.contains(mess.getURI()))
-				uris.add(mess.getURI());
-		}
-		Map<String, Iterable<Message>> sortedMap = new Hashtable<String, Iterable<Message>>();
-		for (String uri : uris) {
-			sortedMap.put(uri, getMessages(uri, type));
-		}
-		return sortedMap;
+		return index.getURISortedMessages(type);
 	}
 
 	public Iterable<Message> getWarningMessages(String uri) {
@@ -382,24 +283,19 @@ public class DefaultResponseXBeans implements Response {
 	}
 
 	public Iterable<Message> getMessages(String group) {
-		return new MessageIterable(null, null, group);
+		return index.getGroupMessages(group);
 	}
 	
 	public Iterable<Message> getMessages(String group, String uri) {
-		return new MessageIterable(uri, null, group);
+		return index.getGroupMessages(group, uri);
 	}
 
 	public Map<String, Iterable<Message>> getURISortedMessages(String group) {
-		List<String> uris = new ArrayList<String>();
-		for (Message mess : getMessages(group)) {
-			if (!uris.contains(mess.getURI()))
-				uris.add(mess.getURI());
-		}
-		Map<String, Iterable<Message>> sortedMap = new Hashtable<String, Iterable<Message>>();
-		for (String uri : uris) {
-			sortedMap.put(uri, getMessages(group, uri));
-		}
-		return sortedMap;
+		return index.getURISortedMessages(group);
+	}
+
+	public MessageIndex getMessageIndex() {
+		return index;
 	}
 
 	public boolean isUndef() {
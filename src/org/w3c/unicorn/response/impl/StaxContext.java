@@ -0,0 +1,88 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.response.impl;
+
+import org.w3c.unicorn.response.Context;
+
+public class StaxContext implements Context {
+
+	private String value;
+	private String uri;
+	private String position;
+	private Integer line;
+	private Integer column;
+	private Integer offset;
+	private Integer lineMin;
+	private Integer lineMax;
+	private Integer colMin;
+	private Integer colMax;
+
+	protected StaxContext(String value, String uri, String position) {
+		this.value = value;
+		this.uri = uri;
+		this.position = position;
+	}
+
+	protected void setLine(Integer line) {
+		this.line = line;
+	}
+
+	protected void setColumn(Integer column) {
+		this.column = column;
+	}
+
+	protected void setOffset(Integer offset) {
+		this.offset = offset;
+	}
+
+	protected void setLineRange(Integer lineMin, Integer lineMax) {
+		this.lineMin = lineMin;
+		this.lineMax = lineMax;
+	}
+
+	protected void setColumnRange(Integer colMin, Integer colMax) {
+		this.colMin = colMin;
+		this.colMax = colMax;
+	}
+
+	public Integer getLine() {
+		return line;
+	}
+
+	public Integer getColumn() {
+		return column;
+	}
+
+	public Integer getLineMin() {
+		return lineMin;
+	}
+
+	public Integer getLineMax() {
+		return lineMax;
+	}
+
+	public Integer getColumnMin() {
+		return colMin;
+	}
+
+	public Integer getColumnMax() {
+		return colMax;
+	}
+
+	public Integer getOffset() {
+		return offset;
+	}
+
+	public String getPosition() {
+		return position;
+	}
+
+	public String getContext() {
+		return value;
+	}
+
+	public String getURI() {
+		return uri;
+	}
+
+}
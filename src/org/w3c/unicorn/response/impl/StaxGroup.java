@@ -0,0 +1,53 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.response.impl;
+
+import org.w3c.unicorn.response.Group;
+
+public class StaxGroup implements Group {
+
+	private String title;
+
+	private String description;
+
+	private String name;
+
+	private String parent;
+
+	private String lang;
+
+	protected StaxGroup(String name, String parent, String title, String description, String lang) {
+		this.name = name;
+		this.parent = parent;
+		this.title = title;
+		this.description = description;
+		this.lang = lang;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getParentName() {
+		return parent;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public boolean hasParent() {
+		if (parent != null)
+			return true;
+		return false;
+	}
+
+	public String getLang() {
+		return lang;
+	}
+
+}
@@ -0,0 +1,94 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.response.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.unicorn.response.Context;
+import org.w3c.unicorn.response.Message;
+
+/**
+ * Message read by StaxResponse. It only keeps the strings of the message,
+ * which are shared with the response when they have the same value for all
+ * the messages (URI, group and language).
+ */
+public class StaxMessage implements Message {
+
+	private List<Context> contexts = Collections.emptyList();
+
+	private String description;
+
+	private String title;
+
+	private int level;
+
+	private int type;
+
+	private String uri;
+
+	private String group;
+
+	private String lang;
+
+	protected StaxMessage(int type, int level, String uri, String group, String lang) {
+		this.type = type;
+		this.level = level;
+		this.uri = uri;
+		this.group = group;
+		this.lang = lang;
+	}
+
+	protected void setTitle(String title) {
+		this.title = title;
+	}
+
+	protected void setDescription(String description) {
+		this.description = description;
+	}
+
+	protected void setContexts(List<Context> contexts) {
+		this.contexts = contexts;
+	}
+
+	public List<Context> getContexts() {
+		return contexts;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public String getURI() {
+		return uri;
+	}
+
+	public void setURI(String uri) {
+		this.uri = uri;
+	}
+
+	public String getGroupName() {
+		return group;
+	}
+
+	public void setGroupName(String group) {
+		this.group = group;
+	}
+
+	public String getLang() {
+		return lang;
+	}
+
+}
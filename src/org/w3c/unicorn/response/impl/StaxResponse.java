@@ -0,0 +1,583 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.response.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Validator;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.Framework;
+import org.w3c.unicorn.exceptions.UnicornException;
+import org.w3c.unicorn.response.Context;
+import org.w3c.unicorn.response.Group;
+import org.w3c.unicorn.response.Message;
+import org.w3c.unicorn.response.MessageIndex;
+import org.w3c.unicorn.response.Response;
+import org.w3c.unicorn.response.ResponseValidation;
+import org.w3c.unicorn.util.Property;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Reads an observation response (observer-response.xsd) in a single StAX pass.
+ * Unlike DefaultResponseXBeans, no document tree is built: the messages are
+ * created as the response is read and only their text is kept. The structure
+ * of the response is always checked. Depending on the ResponseValidation
+ * policy of the observer, the response is also validated against the
+ * compiled schema before it is read. A validated response is buffered in
+ * memory and read twice, once by the validator and once by the parser, which
+ * is why the observers read by this class are only sampled by default
+ * (STAX_RESPONSE_VALIDATION). XPath conditions cannot be evaluated on it.
+ */
+public class StaxResponse implements Response {
+
+	private static final Log logger = LogFactory.getLog(StaxResponse.class);
+
+	private static final String NAMESPACE = "http://www.w3.org/2009/10/unicorn/observationresponse";
+
+	private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+	private static DatatypeFactory datatypeFactory;
+
+	static {
+		inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private MessageIndex index;
+
+	private List<Group> groups = new ArrayList<Group>();
+
+	private String uri;
+
+	private String lang;
+
+	private Date date;
+
+	private String statusValue;
+
+	private Integer rating;
+
+	private String requestURI;
+
+	private String observerID;
+
+	public StaxResponse(InputStream is, String charset, String observerID) throws UnicornException {
+
+		if (charset == null)
+			charset = "UTF-8";
+
+		this.observerID = observerID;
+
+		XMLStreamReader reader = null;
+		try {
+			if (ResponseValidation.getSchema() != null && ResponseValidation.isValidated(observerID))
+				is = validate(is, charset);
+			synchronized (inputFactory) {
+				reader = inputFactory.createXMLStreamReader(is, charset);
+			}
+			parse(reader);
+		} catch (IOException e) {
+			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
+		} catch (XMLStreamException e) {
+			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
+		} finally {
+			try {
+				if (reader != null)
+					reader.close();
+				is.close();
+			} catch (XMLStreamException e) {
+				logger.debug("Error closing response: " + e.getMessage());
+			} catch (IOException e) {
+				logger.debug("Error closing response: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Validates a response against observer-response.xsd.
+	 * 
+	 * @return a stream of the response, which is read in memory
+	 */
+	private InputStream validate(InputStream is, String charset) throws IOException, UnicornException {
+		byte[] content;
+		try {
+			content = IOUtils.toByteArray(is);
+		} finally {
+			is.close();
+		}
+		final List<String> errorList = new ArrayList<String>();
+		Validator validator = ResponseValidation.getSchema().newValidator();
+		validator.setErrorHandler(new ErrorHandler() {
+			public void warning(SAXParseException e) {
+			}
+			public void error(SAXParseException e) {
+				errorList.add(e.getMessage());
+			}
+			public void fatalError(SAXParseException e) throws SAXException {
+				throw e;
+			}
+		});
+		try {
+			validator.validate(new StreamSource(new InputStreamReader(new ByteArrayInputStream(content), charset)));
+		} catch (SAXException e) {
+			errorList.add(e.getMessage());
+		}
+		if (errorList.size() > 0) {
+			ResponseValidation.addInvalid(observerID);
+			String errors = "Errors: " + errorList.size();
+			for (String error : errorList)
+				errors += "\n" + error;
+			throw invalidResponse(errors);
+		}
+		return new ByteArrayInputStream(content);
+	}
+
+	private void parse(XMLStreamReader reader) throws XMLStreamException, UnicornException {
+		reader.nextTag();
+		if (!"observationresponse".equals(reader.getLocalName()) || !NAMESPACE.equals(reader.getNamespaceURI()))
+			throw new UnicornException(new org.w3c.unicorn.util.Message(org.w3c.unicorn.util.Message.ERROR, "$message_response_invalid_schema", null, getObserverName()));
+		uri = reader.getAttributeValue(null, "ref");
+		lang = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+		if (uri == null || lang == null)
+			throw invalidResponse("Attributes ref and xml:lang are required on observationresponse");
+		String sDate = reader.getAttributeValue(null, "date");
+		if (sDate != null)
+			date = parseDate(sDate);
+
+		// messages outside of a list come after the others, and get the
+		// first group if they have none, once all the groups are known
+		List<StaxMessage> topMessages = new ArrayList<StaxMessage>();
+		List<Message> messages = new ArrayList<Message>();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			if ("status".equals(name)) {
+				// if there are two status elements, only the last one is used
+				statusValue = reader.getAttributeValue(null, "value");
+				rating = parseInteger(reader.getAttributeValue(null, "rating"));
+				skipElement(reader);
+			} else if ("message".equals(name)) {
+				StaxMessage message = parseMessage(reader, uri, null);
+				topMessages.add(message);
+			} else if ("list".equals(name)) {
+				String listRef = reader.getAttributeValue(null, "ref");
+				String listGroup = reader.getAttributeValue(null, "group");
+				while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					if (!"message".equals(reader.getLocalName()))
+						throw invalidResponse("Unexpected element in list: " + reader.getLocalName());
+					messages.add(parseMessage(reader, listRef != null ? listRef : uri, listGroup));
+				}
+			} else if ("group".equals(name)) {
+				groups.add(parseGroup(reader));
+			} else {
+				throw invalidResponse("Unexpected element: " + name);
+			}
+		}
+		for (StaxMessage message : topMessages) {
+			if (message.getGroupName() == null && hasGroups())
+				message.setGroupName(groups.get(0).getName());
+			messages.add(message);
+		}
+		index = new MessageIndex(messages);
+	}
+
+	private StaxMessage parseMessage(XMLStreamReader reader, String defaultURI, String defaultGroup) throws XMLStreamException, UnicornException {
+		String sType = reader.getAttributeValue(null, "type");
+		int type;
+		if ("error".equalsIgnoreCase(sType))
+			type = Message.ERROR;
+		else if ("warning".equalsIgnoreCase(sType))
+			type = Message.WARNING;
+		else if ("info".equalsIgnoreCase(sType))
+			type = Message.INFO;
+		else
+			throw invalidResponse("Invalid message type: " + sType);
+		Integer level = parseInteger(reader.getAttributeValue(null, "level"));
+		String ref = reader.getAttributeValue(null, "ref");
+		String group = reader.getAttributeValue(null, "group");
+		String messageLang = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+		StaxMessage message = new StaxMessage(type, level == null ? 0 : level.intValue(),
+				ref != null ? ref : defaultURI, group != null ? group : defaultGroup,
+				messageLang != null ? messageLang : lang);
+
+		List<Context> contexts = null;
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			if ("context".equals(name)) {
+				if (contexts == null)
+					contexts = new ArrayList<Context>(1);
+				contexts.add(parseContext(reader));
+			} else if ("title".equals(name)) {
+				message.setTitle(readContent(reader));
+			} else if ("description".equals(name)) {
+				message.setDescription(readContent(reader));
+			} else {
+				skipElement(reader);
+			}
+		}
+		if (message.getTitle() == null)
+			throw invalidResponse("Message without title");
+		if (contexts != null)
+			message.setContexts(contexts);
+		return message;
+	}
+
+	private StaxContext parseContext(XMLStreamReader reader) throws XMLStreamException, UnicornException {
+		Integer line = parseInteger(reader.getAttributeValue(null, "line"));
+		Integer column = parseInteger(reader.getAttributeValue(null, "column"));
+		Integer offset = parseInteger(reader.getAttributeValue(null, "offset"));
+		String lineRange = reader.getAttributeValue(null, "line-range");
+		String columnRange = reader.getAttributeValue(null, "column-range");
+		String ref = reader.getAttributeValue(null, "ref");
+		String position = reader.getAttributeValue(null, "position");
+		StaxContext context = new StaxContext(readContent(reader), ref, position);
+		context.setLine(line);
+		context.setColumn(column);
+		context.setOffset(offset);
+		if (lineRange != null) {
+			Integer[] range = parseRange(lineRange);
+			context.setLineRange(range[0], range[1]);
+		}
+		if (columnRange != null) {
+			Integer[] range = parseRange(columnRange);
+			context.setColumnRange(range[0], range[1]);
+		}
+		return context;
+	}
+
+	private StaxGroup parseGroup(XMLStreamReader reader) throws XMLStreamException, UnicornException {
+		String name = reader.getAttributeValue(null, "name");
+		if (name == null)
+			throw invalidResponse("Group without name");
+		String parent = reader.getAttributeValue(null, "parent");
+		String groupLang = reader.getAttributeValue(XMLConstants.XML_NS_URI, "lang");
+		String title = null;
+		String description = null;
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			if ("title".equals(reader.getLocalName()))
+				title = reader.getElementText().replaceAll("\\s+", " ").trim();
+			else if ("description".equals(reader.getLocalName()))
+				description = readContent(reader);
+			else
+				skipElement(reader);
+		}
+		return new StaxGroup(name, parent, title, description, groupLang != null ? groupLang : lang);
+	}
+
+	/**
+	 * Reads the content of the current element as XML, without namespace
+	 * declarations, and moves to its end tag.
+	 */
+	private static String readContent(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder content = new StringBuilder();
+		// whether the last start tag is not closed yet, so that it is
+		// written as an empty element if nothing follows
+		boolean openTag = false;
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (openTag && event != XMLStreamConstants.END_ELEMENT) {
+				content.append('>');
+				openTag = false;
+			}
+			switch (event) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				content.append('<').append(reader.getLocalName());
+				for (int i = 0; i < reader.getAttributeCount(); i++) {
+					String prefix = reader.getAttributePrefix(i);
+					content.append(' ');
+					if (prefix != null && prefix.length() > 0)
+						content.append(prefix).append(':');
+					content.append(reader.getAttributeLocalName(i)).append("=\"");
+					escape(content, reader.getAttributeValue(i), true);
+					content.append('"');
+				}
+				openTag = true;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				if (depth > 0) {
+					if (openTag)
+						content.append("/>");
+					else
+						content.append("</").append(reader.getLocalName()).append('>');
+				}
+				openTag = false;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				escape(content, reader.getText(), false);
+				break;
+			}
+		}
+		return content.toString();
+	}
+
+	private static void escape(StringBuilder content, String text, boolean attribute) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				content.append("&amp;");
+				break;
+			case '<':
+				content.append("&lt;");
+				break;
+			case '>':
+				content.append("&gt;");
+				break;
+			case '"':
+				content.append(attribute ? "&quot;" : "\"");
+				break;
+			default:
+				content.append(c);
+			}
+		}
+	}
+
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		for (int depth = 1; depth > 0;) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	private Integer parseInteger(String value) throws UnicornException {
+		if (value == null)
+			return null;
+		try {
+			return Integer.valueOf(value.trim());
+		} catch (NumberFormatException e) {
+			throw invalidResponse("Invalid number: " + value);
+		}
+	}
+
+	private Integer[] parseRange(String value) throws UnicornException {
+		String[] values = value.split("-");
+		if (values.length != 2)
+			throw invalidResponse("Invalid range: " + value);
+		return new Integer[] {parseInteger(values[0]), parseInteger(values[1])};
+	}
+
+	private Date parseDate(String value) throws UnicornException {
+		try {
+			synchronized (StaxResponse.class) {
+				if (datatypeFactory == null)
+					datatypeFactory = DatatypeFactory.newInstance();
+			}
+			return datatypeFactory.newXMLGregorianCalendar(value.trim()).toGregorianCalendar().getTime();
+		} catch (DatatypeConfigurationException e) {
+			logger.error("Unable to parse the date of the response", e);
+			return null;
+		} catch (IllegalArgumentException e) {
+			throw invalidResponse("Invalid date: " + value);
+		}
+	}
+
+	private UnicornException invalidResponse(String content) {
+		return new UnicornException(new org.w3c.unicorn.util.Message(org.w3c.unicorn.util.Message.ERROR, "$message_response_validation_error", content, getObserverName()));
+	}
+
+	private String getObserverName() {
+		return Framework.mapOfObserver.get(observerID).getName(Property.get("DEFAULT_LANGUAGE"));
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public String getURI() {
+		return uri;
+	}
+
+	public int getStatus() {
+		if (statusValue == null) {
+			if (getErrorCount() > 0)
+				return FAILED;
+			return UNDEF;
+		} else if (statusValue.equalsIgnoreCase("passed")) {
+			return PASSED;
+		} else if (statusValue.equalsIgnoreCase("failed")) {
+			return FAILED;
+		} else {
+			return UNDEF;
+		}
+	}
+
+	public Integer getRating() {
+		return rating;
+	}
+
+	public Iterable<Message> getMessages() {
+		return index.getMessages();
+	}
+
+	public Iterable<Message> getErrorMessages() {
+		return getMessages(null, Message.ERROR);
+	}
+
+	public Iterable<Message> getInfoMessages() {
+		return getMessages(null, Message.INFO);
+	}
+
+	public Iterable<Message> getWarningMessages() {
+		return getMessages(null, Message.WARNING);
+	}
+
+	public Iterable<Message> getErrorMessages(String uri) {
+		return getMessages(uri, Message.ERROR);
+	}
+
+	public Iterable<Message> getInfoMessages(String uri) {
+		return getMessages(uri, Message.INFO);
+	}
+
+	public Iterable<Message> getWarningMessages(String uri) {
+		return getMessages(uri, Message.WARNING);
+	}
+
+	public int getErrorCount() {
+		return index.getCount(Message.ERROR);
+	}
+
+	public int getWarningCount() {
+		return index.getCount(Message.WARNING);
+	}
+
+	public int getInfoCount() {
+		return index.getCount(Message.INFO);
+	}
+
+	public Iterable<Message> getMessages(String uri, Integer type) {
+		return index.getMessages(uri, type);
+	}
+
+	public Iterable<Message> getMessages(String group) {
+		return index.getGroupMessages(group);
+	}
+
+	public Map<String, Iterable<Message>> getURISortedMessages(int type) {
+		return index.getURISortedMessages(type);
+	}
+
+	public Map<String, Iterable<Message>> getURISortedMessages(String group) {
+		return index.getURISortedMessages(group);
+	}
+
+	public MessageIndex getMessageIndex() {
+		return index;
+	}
+
+	public List<Group> getGroups() {
+		return groups;
+	}
+
+	public List<Group> getGroupChildren(Group group) {
+		String groupName = group.getName();
+		List<Group> children = new ArrayList<Group>();
+		for (Group g : groups) {
+			if (g.hasParent() && g.getParentName().equals(groupName)) {
+				children.add(g);
+			}
+		}
+		return children;
+	}
+
+	public boolean hasGroups() {
+		if (groups.size() > 0)
+			return true;
+		return false;
+	}
+
+	public boolean isSetRating() {
+		if (getRating() == null)
+			return false;
+		return true;
+	}
+
+	public boolean isPassed() {
+		if (getStatus() == PASSED)
+			return true;
+		return false;
+	}
+
+	public boolean isUndef() {
+		if (getStatus() == UNDEF)
+			return true;
+		return false;
+	}
+
+	public void setRequestUri(String uri) {
+		requestURI = uri;
+	}
+
+	public String getRequestUri() {
+		return requestURI;
+	}
+
+	public String getHTMLRequestUri() {
+		if (requestURI != null) {
+			String outputParamName = Framework.mapOfObserver.get(observerID).getParamOutputName();
+			return requestURI.replaceAll("&?" + outputParamName + "=[^&]*", "");
+		} else {
+			return null;
+		}
+	}
+
+	public String getHTMLIndexUri() {
+		return Framework.mapOfObserver.get(observerID).getIndexURI();
+	}
+
+	public String getObserverID() {
+		return observerID;
+	}
+
+	public void setObserverId(String obsId) {
+		observerID = obsId;
+	}
+
+	/**
+	 * XPath is not supported as the response is not kept
+	 */
+	public String[] selectPath(String xpath) {
+		logger.warn("XPath not supported by StaxResponse: " + xpath + ". Use the default response type for this observer.");
+		return new String[0];
+	}
+
+	/**
+	 * XPath is not supported as the response is not kept
+	 */
+	public boolean evaluateXPath(String xpathQuery) {
+		logger.warn("XPath not supported by StaxResponse: " + xpathQuery + ". Use the default response type for this observer.");
+		return false;
+	}
+
+	public String getLang() {
+		return lang;
+	}
+
+}
@@ -3,8 +3,6 @@
 // Please first read the full copyright statement in file COPYRIGHT.html
 package org.w3c.unicorn.response.impl;
 
-import javax.json.JsonObject;
-
 import org.w3c.unicorn.response.Context;
 
 public class ValidatorNuContext implements Context {
@@ -14,26 +12,17 @@ public class ValidatorNuContext implements Context {
 	private Integer lineMax;
 	private Integer colMin;
 	private Integer colMax;
-  private String uri;
+	private String uri;
 	
-    public ValidatorNuContext(JsonObject jsonMessage, String uri) {
-      this.uri = uri;
-      try {
-          value = jsonMessage.getString("extract").replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&apos;").replace("\"", "&quot;");
-      } catch (NullPointerException e) {}
-      try {
-          lineMin = jsonMessage.getInt("firstLine");
-      } catch (NullPointerException e) {}
-      try {
-          lineMax = jsonMessage.getInt("lastLine");
-      } catch (NullPointerException e) {}
-      try {
-          colMin = jsonMessage.getInt("firstCol");
-      } catch (NullPointerException e) {}
-      try {
-          colMax = jsonMessage.getInt("lastCol");
-      } catch (NullPointerException e) {}
-  }
+	public ValidatorNuContext(String extract, Integer lineMin, Integer lineMax, Integer colMin, Integer colMax, String uri) {
+		this.uri = uri;
+		if (extract != null)
+			value = extract.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&apos;").replace("\"", "&quot;");
+		this.lineMin = lineMin;
+		this.lineMax = lineMax;
+		this.colMin = colMin;
+		this.colMax = colMax;
+	}
 	
 	public Integer getLine() {
       if (lineMin != null) {
@@ -81,4 +70,8 @@ public class ValidatorNuContext implements Context {
 		return uri;
 	}
 	
+	protected void setURI(String uri) {
+		this.uri = uri;
+	}
+	
 }
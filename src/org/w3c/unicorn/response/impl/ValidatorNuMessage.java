@@ -5,7 +5,6 @@ package org.w3c.unicorn.response.impl;
 
 import java.util.ArrayList;
 import java.util.List;
-import javax.json.JsonObject;
 
 import org.w3c.unicorn.response.Context;
 import org.w3c.unicorn.response.Message;
@@ -28,29 +27,31 @@ public class ValidatorNuMessage implements Message {
 	
 	private String lang;
 
-    public ValidatorNuMessage(JsonObject jsonMessage, String uri) {
-        this.uri = uri;
-      String respType = jsonMessage.getString("type");
-      switch(respType) {
-      case "info":
-          type = Message.INFO;
-          try {
-              String subType  = jsonMessage.getString("subtype");
-              if (subType == "warning") {
-                  type = Message.WARNING;
-              }
-          } catch(NullPointerException e) {
-              // No subtype, don't do anything
-          }
-          break;
-      case "error":
-          type = Message.ERROR;
-          break;
-      }
-      
-      title = jsonMessage.getString("message");
-
-      contexts.add(new ValidatorNuContext(jsonMessage, uri));
+	/**
+	 * Creates a message of validator.nu. Errors are errors, info messages of
+	 * subtype warning are warnings, the other messages are infos.
+	 * 
+	 * @param respType
+	 *            the type of the message: error, info or non-document-error
+	 * @param subType
+	 *            the subtype of an info message, warning for warnings
+	 * @param title
+	 *            the text of the message
+	 * @param context
+	 *            the location of the message
+	 * @param uri
+	 *            the URI of the document, or null if not known yet
+	 */
+	public ValidatorNuMessage(String respType, String subType, String title, ValidatorNuContext context, String uri) {
+		this.uri = uri;
+		if ("error".equals(respType))
+			type = Message.ERROR;
+		else if ("info".equals(respType) && "warning".equals(subType))
+			type = Message.WARNING;
+		else
+			type = Message.INFO;
+		this.title = title;
+		contexts.add(context);
 	}
 	
 	public List<Context> getContexts() {
@@ -79,6 +80,8 @@ public class ValidatorNuMessage implements Message {
 
 	public void setURI(String uri) {
 		this.uri = uri;
+		for (Context context : contexts)
+			((ValidatorNuContext) context).setURI(uri);
 	}
 
 	public String getGroupName() {
@@ -5,34 +5,28 @@ package org.w3c.unicorn.response.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.Charset;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
-import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import javax.json.Json;
-import javax.json.JsonReaderFactory;
-import javax.json.JsonReader;
-import javax.json.JsonObject;
-import javax.json.JsonArray;
-import javax.json.JsonValue;
+import javax.json.JsonException;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
 
 import org.w3c.unicorn.Framework;
 import org.w3c.unicorn.response.Group;
 import org.w3c.unicorn.response.Message;
+import org.w3c.unicorn.response.MessageIndex;
 import org.w3c.unicorn.response.Response;
 import org.w3c.unicorn.util.Property;
 import org.w3c.unicorn.exceptions.UnicornException;
 
 public class ValidatorNuResponse implements Response {
 	
-	private List<Message> messages = new ArrayList<Message>();
-	private int errorCount = 0;
-	private int warningCount = 0;
-	private int infoCount = 0;
+	private MessageIndex index;
 	
 	private List<Group> groups = new ArrayList<Group>();
 	
@@ -40,49 +34,141 @@ public class ValidatorNuResponse implements Response {
 	
 	private String observerID;
 
-  private JsonObject jsonResponse;
+	/**
+	 * The url field of the response, the only one kept besides the messages
+	 */
+	private String uri;
 	
 	public ValidatorNuResponse(InputStream is, String charset, String observerID) throws UnicornException {
 		
-		if (charset == null)
-			charset = "UTF-8";
-		
 		this.observerID = observerID;
-
-    JsonReader reader      = Json.createReader(is);
-    jsonResponse           = reader.readObject();
-    JsonArray jsonMessages = jsonResponse.getJsonArray("messages");
-    
-    for(JsonValue jsonMessage : jsonMessages) {
-        if (jsonMessage instanceof JsonObject) {
-            Message message = new ValidatorNuMessage((JsonObject) jsonMessage, getURI());
-            messages.add(message);
-
-            switch (message.getType()) {
-            case Message.ERROR:
-                errorCount++;
-                break;
-            case Message.WARNING:
-                warningCount++;
-                break;
-            case Message.INFO:
-                infoCount++;
-                break;
-            }
-        }
-    }
-  }
-    
+		
+		List<Message> messages = new ArrayList<Message>();
+		JsonParser parser = null;
+		try {
+			// without a charset, the encoding is detected from the first bytes
+			if (charset == null)
+				parser = Json.createParser(is);
+			else
+				parser = Json.createParser(new InputStreamReader(is, charset));
+			if (parser.next() != Event.START_OBJECT)
+				throw new JsonParsingException("Object expected", parser.getLocation());
+			for (Event event = parser.next(); event != Event.END_OBJECT; event = parser.next()) {
+				String key = parser.getString();
+				event = parser.next();
+				if ("url".equals(key) && event == Event.VALUE_STRING)
+					uri = parser.getString();
+				else if ("messages".equals(key) && event == Event.START_ARRAY)
+					readMessages(parser, messages);
+				else
+					skip(parser, event);
+			}
+		} catch (JsonException e) {
+			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
+		} catch (IOException e) {
+			throw new UnicornException(new org.w3c.unicorn.util.Message(e));
+		} finally {
+			try {
+				if (parser != null)
+					parser.close();
+				is.close();
+			} catch (JsonException e) {
+				// already closed
+			} catch (IOException e) {
+				// already closed
+			}
+		}
+		
+		// the url field can come after the messages
+		for (Message message : messages)
+			if (message.getURI() == null)
+				((ValidatorNuMessage) message).setURI(uri);
+		index = new MessageIndex(messages);
+	}
+	
+	private void readMessages(JsonParser parser, List<Message> messages) {
+		for (Event event = parser.next(); event != Event.END_ARRAY; event = parser.next()) {
+			if (event != Event.START_OBJECT) {
+				skip(parser, event);
+				continue;
+			}
+			messages.add(readMessage(parser));
+		}
+	}
+	
+	/**
+	 * Reads a message object, whose START_OBJECT has just been read.
+	 */
+	private ValidatorNuMessage readMessage(JsonParser parser) {
+		String type = null;
+		String subType = null;
+		String title = null;
+		String extract = null;
+		Integer firstLine = null;
+		Integer lastLine = null;
+		Integer firstColumn = null;
+		Integer lastColumn = null;
+		for (Event event = parser.next(); event != Event.END_OBJECT; event = parser.next()) {
+			String key = parser.getString();
+			event = parser.next();
+			if (event == Event.VALUE_STRING) {
+				if ("type".equals(key))
+					type = parser.getString();
+				else if ("subtype".equals(key))
+					subType = parser.getString();
+				else if ("message".equals(key))
+					title = parser.getString();
+				else if ("extract".equals(key))
+					extract = parser.getString();
+			} else if (event == Event.VALUE_NUMBER) {
+				if ("firstLine".equals(key))
+					firstLine = parser.getInt();
+				else if ("lastLine".equals(key))
+					lastLine = parser.getInt();
+				else if ("firstColumn".equals(key) || "firstCol".equals(key))
+					firstColumn = parser.getInt();
+				else if ("lastColumn".equals(key) || "lastCol".equals(key))
+					lastColumn = parser.getInt();
+			} else {
+				skip(parser, event);
+			}
+		}
+		return new ValidatorNuMessage(type, subType, title,
+				new ValidatorNuContext(extract, firstLine, lastLine, firstColumn, lastColumn, uri), uri);
+	}
+	
+	/**
+	 * Skips a value, whose first event has just been read.
+	 */
+	private void skip(JsonParser parser, Event event) {
+		if (event != Event.START_OBJECT && event != Event.START_ARRAY)
+			return;
+		for (int depth = 1; depth > 0;) {
+			switch (parser.next()) {
+			case START_OBJECT:
+			case START_ARRAY:
+				depth++;
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				depth--;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+	
 	public Date getDate() {
       return new Date();
 	}
 	
 	public String getURI() {
-      return jsonResponse.getString("url");
+		return uri;
 	}
 
 	public int getStatus() {
-      return (messages.size() == 0) ? PASSED : FAILED;
+      return (index.getCount() == 0) ? PASSED : FAILED;
 	}
 	
 	public Integer getRating() {
@@ -90,7 +176,7 @@ public class ValidatorNuResponse implements Response {
 	}
 	
 	public Iterable<Message> getMessages() {
-		return messages;
+		return index.getMessages();
 	}
 	
 	public Iterable<Message> getErrorMessages() {
@@ -106,15 +192,15 @@ public class ValidatorNuResponse implements Response {
 	}
 	
 	public int getErrorCount() {
-		return errorCount;
+		return index.getCount(Message.ERROR);
 	}
 	
 	public int getWarningCount() {
-		return warningCount;
+		return index.getCount(Message.WARNING);
 	}
 	
 	public int getInfoCount() {
-		return infoCount;
+		return index.getCount(Message.INFO);
 	}
 
 	public List<Group> getGroups() {		
@@ -174,74 +260,6 @@ public class ValidatorNuResponse implements Response {
       return (getStatus() == PASSED);
 	}
 
-	public Iterable<Message> getMessages(String uri, int type) {
-		return new MessageIterable(uri, type, null);
-	}
-	
-	protected class MessageIterable implements Iterable<Message> {
-
-		private int index = 0;
-		private Integer type;
-		private String uri;
-		private String group;
-		
-		public MessageIterable(String uri, Integer type, String group) {
-			this.uri = uri;
-			this.type = type;
-			this.group = group;
-		}
-		
-		public int size() {
-			index = 0;
-			int size = 0;
-			while (index < messages.size()) {
-				if ((uri == null || uri.equals(messages.get(index).getURI())) && 
-					(type == null || messages.get(index).getType() == type) &&
-					(group == null || group.equals(messages.get(index).getGroupName()))) {
-					index++;
-					size++;
-				}
-				index++;
-			}
-			index = 0;
-			return size;
-		}
-		
-		public Iterator<Message> iterator() {
-			return new Iterator<Message>() {
-				public boolean hasNext() {
-					int x = index;
-					while (x < messages.size()) {
-						if ((uri == null || uri.equals(messages.get(x).getURI())) && 
-                (type == null || messages.get(x).getType() == type) &&
-                (group == null || group.equals(messages.get(x).getGroupName()))) {
-                return true;
-            }
-						x++;
-					}
-					return false;
-				}
-
-				public Message next() {
-					while (index < messages.size()) {
-						if ((uri == null || uri.equals(messages.get(index).getURI())) && 
-							(type == null || messages.get(index).getType() == type) &&
-							(group == null || group.equals(messages.get(index).getGroupName()))) {
-							index++;
-							return messages.get(index - 1);
-						}
-						index++;
-					}
-					return null;
-				}
-
-				public void remove() {
-					return;
-				}
-			};
-		}
-	}
-
 	public Iterable<Message> getErrorMessages(String uri) {
 		return getMessages(uri, Message.ERROR);
 	}
@@ -251,21 +269,12 @@ public class ValidatorNuResponse implements Response {
 	}
 
 	public Iterable<Message> getMessages(String uri, Integer type) {
-		return new MessageIterable(uri, type, null);
+		return index.getMessages(uri, type);
 	}
 
-    public Map<String, Iterable<Message>> getURISortedMessages(int type) {
-        List<String> uris = new ArrayList<String>();
-        for (Message mess : getMessages(null, type)) {
-            if (!uris.contains(mess.getURI()))
-                uris.add(mess.getURI());
-        }
-        Map<String, Iterable<Message>> sortedMap = new Hashtable<String, Iterable<Message>>();
-        for (String uri : uris) {
-            sortedMap.put(uri, getMessages(uri, type));
-        }
-        return sortedMap;
-    }
+	public Map<String, Iterable<Message>> getURISortedMessages(int type) {
+		return index.getURISortedMessages(type);
+	}
 
 	public Iterable<Message> getWarningMessages(String uri) {
 		return getMessages(uri, Message.WARNING);
@@ -276,24 +285,19 @@ public class ValidatorNuResponse implements Response {
 	}
 
 	public Iterable<Message> getMessages(String group) {
-		return new MessageIterable(null, null, group);
+		return index.getGroupMessages(group);
 	}
 	
 	public Iterable<Message> getMessages(String group, String uri) {
-		return new MessageIterable(uri, null, group);
+		return index.getGroupMessages(group, uri);
 	}
 
 	public Map<String, Iterable<Message>> getURISortedMessages(String group) {
-		List<String> uris = new ArrayList<String>();
-		for (Message mess : getMessages(group)) {
-			if (!uris.contains(mess.getURI()))
-				uris.add(mess.getURI());
-		}
-		Map<String, Iterable<Message>> sortedMap = new Hashtable<String, Iterable<Message>>();
-		for (String uri : uris) {
-			sortedMap.put(uri, getMessages(group, uri));
-		}
-		return sortedMap;
+		return index.getURISortedMessages(group);
+	}
+
+	public MessageIndex getMessageIndex() {
+		return index;
 	}
 
 	public boolean isUndef() {
@@ -0,0 +1,356 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.tasklist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.w3c.unicorn.contract.CallParameter;
+import org.w3c.unicorn.contract.EnumInputMethod;
+import org.w3c.unicorn.contract.InputMethod;
+import org.w3c.unicorn.contract.Observer;
+import org.w3c.unicorn.tasklist.parameters.Mapping;
+import org.w3c.unicorn.tasklist.parameters.Parameter;
+import org.w3c.unicorn.tasklist.parameters.Value;
+import org.w3c.unicorn.tasklisttree.TLTExec;
+import org.w3c.unicorn.tasklisttree.TLTIf;
+import org.w3c.unicorn.tasklisttree.TLTNode;
+
+/**
+ * Execution plan of a task. It is computed once the tasklist is loaded and
+ * never modified afterwards, so that the requests of a check are built with
+ * a few lookups instead of browsing the task parameters and the observer
+ * contracts again.
+ */
+public class ExecutionPlan {
+
+	private static final Log logger = LogFactory.getLog(ExecutionPlan.class);
+
+	/**
+	 * Plan of each node of the task tree
+	 */
+	private final Map<TLTNode, NodePlan> mapOfNodePlan;
+
+	/**
+	 * Best input method of each observer, by preferred input method
+	 */
+	private final Map<String, Map<EnumInputMethod, InputMethod>> mapOfInputMethod;
+
+	/**
+	 * Required fixed parameters of each observer, by input method
+	 */
+	private final Map<String, Map<EnumInputMethod, List<Mapping>>> mapOfFixedParameter;
+
+	/**
+	 * Plans of the parameters of the task
+	 */
+	private final List<ParameterPlan> listOfParameterPlan;
+
+	/**
+	 * Observers of each firstPassed output group, by priority
+	 */
+	private final List<List<String>> listOfFirstPassedGroup;
+
+	/**
+	 * Observers whose responses are needed by a condition of the task
+	 */
+	private final Set<String> setOfConditionObserver;
+
+	/**
+	 * Computes the plan of a task whose tree has been expanded.
+	 *
+	 * @param aTask
+	 *            the task
+	 */
+	public ExecutionPlan(final Task aTask) {
+		mapOfNodePlan = new IdentityHashMap<TLTNode, NodePlan>();
+		mapOfInputMethod = new LinkedHashMap<String, Map<EnumInputMethod, InputMethod>>();
+		mapOfFixedParameter = new LinkedHashMap<String, Map<EnumInputMethod, List<Mapping>>>();
+		listOfParameterPlan = new ArrayList<ParameterPlan>();
+		listOfFirstPassedGroup = new ArrayList<List<String>>();
+		setOfConditionObserver = new HashSet<String>();
+
+		List<MimeType> mimeTypes = new ArrayList<MimeType>();
+		for (String sMimeType : aTask.getSupportedMimeTypes()) {
+			try {
+				mimeTypes.add(new MimeType(sMimeType));
+			} catch (MimeTypeParseException e) {
+				logger.warn("Invalid mime type in task " + aTask.getID() + ": " + sMimeType);
+			}
+		}
+		if (aTask.getTree() != null)
+			addNode(aTask.getTree(), mimeTypes);
+
+		for (Parameter aParameter : aTask.getMapOfParameter().values())
+			listOfParameterPlan.add(new ParameterPlan(aParameter));
+
+		if (aTask.getOutput() != null) {
+			for (Group group : aTask.getOutput().getGroupList()) {
+				if (group.isSetType() && group.getType() == Group.Type.FIRSTPASSED && group.getObservationList().size() > 1)
+					listOfFirstPassedGroup.add(Collections.unmodifiableList(new ArrayList<String>(group.getObservationList())));
+			}
+		}
+	}
+
+	private void addNode(final TLTNode node, final List<MimeType> mimeTypes) {
+		if (node == null || mapOfNodePlan.containsKey(node))
+			return;
+		NodePlan nodePlan = new NodePlan(node, mimeTypes);
+		mapOfNodePlan.put(node, nodePlan);
+		for (Observer aObserver : nodePlan.observers)
+			addObserver(aObserver);
+		for (TLTIf iF : node.getIfList()) {
+			for (Observer aObserver : iF.getResponseObservers())
+				setOfConditionObserver.add(aObserver.getID());
+			addNode(iF.getIfOk(), mimeTypes);
+			addNode(iF.getIfNotOk(), mimeTypes);
+		}
+	}
+
+	private void addObserver(final Observer aObserver) {
+		if (mapOfInputMethod.containsKey(aObserver.getID()))
+			return;
+		Map<EnumInputMethod, InputMethod> inputMethods = new EnumMap<EnumInputMethod, InputMethod>(EnumInputMethod.class);
+		Map<EnumInputMethod, List<Mapping>> fixedParameters = new EnumMap<EnumInputMethod, List<Mapping>>(EnumInputMethod.class);
+		for (EnumInputMethod aEnumInputMethod : EnumInputMethod.values()) {
+			InputMethod aInputMethod = aObserver.getBestInputMethod(aEnumInputMethod);
+			if (aInputMethod == null)
+				continue;
+			inputMethods.put(aEnumInputMethod, aInputMethod);
+			if (fixedParameters.containsKey(aInputMethod.getMethod()))
+				continue;
+			fixedParameters.put(aInputMethod.getMethod(), getFixedParameters(aObserver, aInputMethod));
+		}
+		mapOfInputMethod.put(aObserver.getID(), inputMethods);
+		mapOfFixedParameter.put(aObserver.getID(), fixedParameters);
+	}
+
+	/**
+	 * Returns the observers of a node which handle a mime type.
+	 *
+	 * @param node
+	 *            a node of the task tree
+	 * @param aMimeType
+	 *            the mime type of the document, or null if unknown
+	 * @return the observers to call, in the order of the task
+	 */
+	public List<Observer> getObservers(final TLTNode node, final MimeType aMimeType) {
+		NodePlan nodePlan = mapOfNodePlan.get(node);
+		if (nodePlan == null) {
+			logger.warn("Node " + node.getID() + " is not part of the execution plan");
+			nodePlan = new NodePlan(node, new ArrayList<MimeType>());
+		}
+		return nodePlan.getObservers(aMimeType);
+	}
+
+	/**
+	 * @return the best input method of the observer for the given preferred
+	 *         input method
+	 */
+	public InputMethod getBestInputMethod(final Observer aObserver, final EnumInputMethod preferred) {
+		Map<EnumInputMethod, InputMethod> inputMethods = mapOfInputMethod.get(aObserver.getID());
+		if (inputMethods == null)
+			return aObserver.getBestInputMethod(preferred);
+		return inputMethods.get(preferred);
+	}
+
+	/**
+	 * @return the required parameters with a fixed value of the call method
+	 *         used by the observer for this input method
+	 */
+	public List<Mapping> getFixedParameters(final Observer aObserver, final EnumInputMethod aEnumInputMethod) {
+		Map<EnumInputMethod, List<Mapping>> fixedParameters = mapOfFixedParameter.get(aObserver.getID());
+		if (fixedParameters != null && fixedParameters.containsKey(aEnumInputMethod))
+			return fixedParameters.get(aEnumInputMethod);
+		return getFixedParameters(aObserver, aObserver.getInputMethod(aEnumInputMethod));
+	}
+
+	private static List<Mapping> getFixedParameters(final Observer aObserver, final InputMethod aInputMethod) {
+		List<Mapping> fixed = new ArrayList<Mapping>();
+		for (CallParameter aCallParameter : aInputMethod.getCallMethod().getListOfCallParameter()) {
+			if (aCallParameter.isRequired() && aCallParameter.isFixed())
+				fixed.add(new Mapping(aObserver, aCallParameter.getName(), aCallParameter.getFixed()));
+		}
+		return Collections.unmodifiableList(fixed);
+	}
+
+	/**
+	 * @return the plans of the parameters of the task
+	 */
+	public List<ParameterPlan> getParameters() {
+		return Collections.unmodifiableList(listOfParameterPlan);
+	}
+
+	/**
+	 * @return the observers of each firstPassed output group, by priority
+	 */
+	public List<List<String>> getFirstPassedGroups() {
+		return Collections.unmodifiableList(listOfFirstPassedGroup);
+	}
+
+	/**
+	 * @return true if the response of the observer is needed by a condition
+	 *         of the task tree
+	 */
+	public boolean isConditionObserver(final String sObserverID) {
+		return setOfConditionObserver.contains(sObserverID);
+	}
+
+	/**
+	 * Observers of a node, by supported mime type
+	 */
+	private static class NodePlan {
+
+		private final List<Observer> observers;
+
+		private final Map<String, List<Observer>> mapOfObserverByMimeType;
+
+		private NodePlan(final TLTNode node, final List<MimeType> mimeTypes) {
+			Map<String, Observer> mapOfObserver = new LinkedHashMap<String, Observer>();
+			for (TLTExec exec : node.getExecutionList())
+				mapOfObserver.put(exec.getValue(), exec.getObserver());
+			observers = Collections.unmodifiableList(new ArrayList<Observer>(mapOfObserver.values()));
+
+			mapOfObserverByMimeType = new LinkedHashMap<String, List<Observer>>();
+			for (MimeType aMimeType : mimeTypes) {
+				if (!mapOfObserverByMimeType.containsKey(aMimeType.getBaseType()))
+					mapOfObserverByMimeType.put(aMimeType.getBaseType(), match(aMimeType));
+			}
+		}
+
+		private List<Observer> getObservers(final MimeType aMimeType) {
+			if (aMimeType == null)
+				return observers;
+			List<Observer> list = mapOfObserverByMimeType.get(aMimeType.getBaseType());
+			if (list == null)
+				return match(aMimeType);
+			return list;
+		}
+
+		private List<Observer> match(final MimeType aMimeType) {
+			List<Observer> list = new ArrayList<Observer>();
+			for (Observer aObserver : observers) {
+				if (aObserver.canHandleMimeType(aMimeType))
+					list.add(aObserver);
+			}
+			return Collections.unmodifiableList(list);
+		}
+	}
+
+	/**
+	 * Mappings of a task parameter to the parameters of the observers. A
+	 * mapping without value takes the value given for the task parameter.
+	 */
+	public static class ParameterPlan {
+
+		private final String sName;
+
+		private final String[] tDefaultValue;
+
+		/**
+		 * Mappings by observer for a parameter which accepts any string, null
+		 * otherwise
+		 */
+		private final Map<String, List<Mapping>> mapOfFreeMapping;
+
+		/**
+		 * Mappings by observer for each value of the parameter
+		 */
+		private final Map<String, Map<String, List<Mapping>>> mapOfMappingByValue;
+
+		private ParameterPlan(final Parameter aParameter) {
+			sName = aParameter.getName();
+
+			Map<String, Value> mapOfDefaultValue = aParameter.getMapOfDefaultValue();
+			if (mapOfDefaultValue == null || mapOfDefaultValue.size() == 0)
+				tDefaultValue = null;
+			else
+				tDefaultValue = mapOfDefaultValue.keySet().toArray(new String[mapOfDefaultValue.size()]);
+
+			Map<String, Value> mapOfValue = aParameter.getMapOfValue();
+			if (mapOfValue == null) {
+				// Parameter allow all string !
+				mapOfMappingByValue = null;
+				if (tDefaultValue == null) {
+					logger.warn("Parameter " + sName + " accepts any value but has no default value to hold its mappings.");
+					mapOfFreeMapping = Collections.emptyMap();
+				} else {
+					mapOfFreeMapping = copy(mapOfDefaultValue.values().iterator().next(), null);
+				}
+			} else {
+				mapOfFreeMapping = null;
+				mapOfMappingByValue = new LinkedHashMap<String, Map<String, List<Mapping>>>();
+				for (Map.Entry<String, Value> entry : mapOfValue.entrySet())
+					mapOfMappingByValue.put(entry.getKey(), copy(entry.getValue(), entry.getKey()));
+			}
+		}
+
+		/**
+		 * Copies the mappings of a value, replacing the empty mapped values
+		 * by sValue.
+		 */
+		private static Map<String, List<Mapping>> copy(final Value aValue, final String sValue) {
+			Map<String, List<Mapping>> mapOfMapping = new LinkedHashMap<String, List<Mapping>>();
+			for (Map.Entry<String, List<Mapping>> entry : aValue.getMapOfMapping().entrySet()) {
+				List<Mapping> mappings = new ArrayList<Mapping>();
+				for (Mapping aMapping : entry.getValue()) {
+					String sMappedValue = aMapping.getValue();
+					if (null == sMappedValue || "".equals(sMappedValue))
+						sMappedValue = sValue;
+					mappings.add(new Mapping(aMapping.getObserver(), aMapping.getParam(), sMappedValue));
+				}
+				mapOfMapping.put(entry.getKey(), Collections.unmodifiableList(mappings));
+			}
+			return Collections.unmodifiableMap(mapOfMapping);
+		}
+
+		public String getName() {
+			return sName;
+		}
+
+		/**
+		 * @return the default values of the parameter, or null if it has none
+		 */
+		public String[] getDefaultValues() {
+			return tDefaultValue == null ? null : tDefaultValue.clone();
+		}
+
+		/**
+		 * @return true if the parameter accepts any string
+		 */
+		public boolean isFree() {
+			return mapOfFreeMapping != null;
+		}
+
+		/**
+		 * @return the mappings by observer of a parameter which accepts any
+		 *         string. Mappings without value take the given value.
+		 */
+		public Map<String, List<Mapping>> getFreeMappings() {
+			return mapOfFreeMapping;
+		}
+
+		/**
+		 * @return the mappings by observer of a value of the parameter, or
+		 *         null if the value is unknown
+		 */
+		public Map<String, List<Mapping>> getMappings(final String sValue) {
+			if (mapOfMappingByValue == null)
+				return null;
+			return mapOfMappingByValue.get(sValue);
+		}
+	}
+
+}
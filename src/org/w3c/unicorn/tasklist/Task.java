@@ -66,6 +66,17 @@ public class Task {
 
 	private Output output;
 	
+	/**
+	 * Maximum duration of a call to this task in milliseconds, 0 if the
+	 * default deadline applies
+	 */
+	private long deadline;
+	
+	/**
+	 * Plan used to build the requests, computed once the tree is expanded
+	 */
+	private volatile ExecutionPlan executionPlan;
+	
 	private static Log logger = LogFactory.getLog(Task.class);
 
 	/**
@@ -132,6 +143,7 @@ public class Task {
 	 * Set the root of the execution level tree
 	 */
 	public void setTree(TLTNode root) {
+		this.executionPlan = null;
 		this.root = root;
 	}
 
@@ -276,6 +288,7 @@ public class Task {
 	 */
 	public void setMapOfParameter(final Map<String, Parameter> mapOfParameter) {
 		this.mapOfTaskParameter = mapOfParameter;
+		this.executionPlan = null;
 	}
 
 	/**
@@ -285,6 +298,7 @@ public class Task {
 	 */
 	public void addParameter(final Parameter aParameter) {
 		this.mapOfTaskParameter.put(aParameter.getName(), aParameter);
+		this.executionPlan = null;
 	}
 
 	/**
@@ -423,4 +437,27 @@ public class Task {
 		return output;
 	}
 
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns the execution plan of this task, computing it if the tree or
+	 * the parameters have changed since it was last computed.
+	 * 
+	 * @return the execution plan
+	 */
+	public ExecutionPlan getExecutionPlan() {
+		ExecutionPlan plan = executionPlan;
+		if (plan == null) {
+			plan = new ExecutionPlan(this);
+			executionPlan = plan;
+		}
+		return plan;
+	}
+
 }
@@ -44,6 +44,7 @@ import org.w3c.unicorn.tasklisttree.TLTCond;
 import org.w3c.unicorn.tasklisttree.TLTExec;
 import org.w3c.unicorn.tasklisttree.TLTIf;
 import org.w3c.unicorn.tasklisttree.TLTNode;
+import org.w3c.unicorn.util.Property;
 import org.w3c.unicorn.util.Language;
 import org.w3c.unicorn.util.LocalizedString;
 
@@ -95,6 +96,13 @@ public class TaskListUnmarshallerBeans implements TasksListUnmarshaller {
 		// Create the execution level tree
 		aTaskCurrent.setID(aTask.getId());
 		aTaskCurrent.setTree(this.expandTree(aTask, aTask.getRoutine()));
+		if (aTask.isSetDeadline()) {
+			try {
+				aTaskCurrent.setDeadline(Property.parseDuration(aTask.getDeadline()));
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid deadline for task " + aTask.getId() + ": " + aTask.getDeadline() + ". The default deadline is used instead.");
+			}
+		}
 		
 		// Add the OutputList
 		Output output = new Output();
@@ -529,6 +537,12 @@ public class TaskListUnmarshallerBeans implements TasksListUnmarshaller {
 			logger.trace("Expand task : " + aTask.getID() + ".");
 			aTask.setTree(aTask.expandNode(mapOfTask, aTask.getTree()));
 		}
+		
+		// computes the plans of the expanded tasks
+		for (final org.w3c.unicorn.tasklist.Task aTask : this.mapOfTask
+				.values()) {
+			aTask.getExecutionPlan();
+		}
 
 	}
 
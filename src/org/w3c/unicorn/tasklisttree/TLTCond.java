@@ -58,6 +58,17 @@ public abstract class TLTCond {
 	
 	public abstract boolean check(UnicornCall unicornCall) throws UnicornException;
 	
+	/**
+	 * Returns true if the condition needs the responses of the observers.
+	 * Other conditions only depend on the input and can be checked before any
+	 * request is sent.
+	 * 
+	 * @return false by default
+	 */
+	public boolean dependsOnResponses() {
+		return false;
+	}
+	
 	public static TLTCond createCond(EnumCondType type) {
 		switch (type) {
 		case MIMETYPE:
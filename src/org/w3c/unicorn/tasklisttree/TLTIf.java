@@ -3,10 +3,12 @@
 package org.w3c.unicorn.tasklisttree;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.unicorn.UnicornCall;
+import org.w3c.unicorn.contract.Observer;
 import org.w3c.unicorn.exceptions.UnicornException;
 
 /**
@@ -92,6 +94,38 @@ public class TLTIf {
 		return false;
 	}
 	
+	/**
+	 * Returns true if one of the conditions needs the responses of the
+	 * observers, in which case the if can only be checked once these
+	 * observers have been called.
+	 * 
+	 * @return whether or not the if depends on the responses
+	 */
+	public boolean dependsOnResponses() {
+		for (TLTCond cond : conds) {
+			if (cond.dependsOnResponses()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the observers whose responses are needed to check this if.
+	 * 
+	 * @return the observers referenced by the conditions which depend on the
+	 *         responses
+	 */
+	public List<Observer> getResponseObservers() {
+		List<Observer> observers = new ArrayList<Observer>();
+		for (TLTCond cond : conds) {
+			if (cond.dependsOnResponses() && cond.getObserver() != null && !observers.contains(cond.getObserver())) {
+				observers.add(cond.getObserver());
+			}
+		}
+		return observers;
+	}
+	
 	/**
 	 * Sets the child node corresponding to the "ok" case
 	 * 
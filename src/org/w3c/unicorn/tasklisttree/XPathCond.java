@@ -20,5 +20,10 @@ public class XPathCond extends TLTCond {
 		
 		return false;
 	}
+	
+	@Override
+	public boolean dependsOnResponses() {
+		return true;
+	}
 
 }
@@ -1,18 +1,27 @@
 package org.w3c.unicorn.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
 
 import javax.activation.MimeType;
+import javax.activation.MimeTypeParseException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -25,6 +34,11 @@ import org.apache.commons.logging.LogFactory;
  * Description: this class helps to send POST HTTP requests with various form
  * data, including files. Cookies can be added to be included in the request.
  * </p>
+ * <p>
+ * The parts of the request are collected and streamed to the connection by
+ * post(): with a fixed length when the size of every part is known, in
+ * chunks otherwise, so that the body is never buffered in memory.
+ * </p>
  * 
  * @author Vlad Patryshev
  * @version 1.0
@@ -35,9 +49,49 @@ public class ClientHttpRequest {
 
 	private static Random aRandom = new Random();
 
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte[] CRLF = "\r\n".getBytes(ASCII);
+
+	private static final byte[] DASHES = "--".getBytes(ASCII);
+
+	private static final byte[] CONTENT_DISPOSITION = "Content-Disposition: form-data; name=\"".getBytes(ASCII);
+
+	private static final byte[] FILENAME = "\"; filename=\"".getBytes(ASCII);
+
+	private static final byte[] CONTENT_TYPE = "\"\r\nContent-Type: ".getBytes(ASCII);
+
+	private static final byte[] QUOTE_CRLF = "\"\r\n".getBytes(ASCII);
+
+	/**
+	 * Size of the buffers used to copy files and of the chunks
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Buffers reused by the requests to copy files
+	 */
+	private static final BlockingQueue<byte[]> bufferPool = new ArrayBlockingQueue<byte[]>(16);
+
 	private HttpURLConnection aURLConnection;
 
-	private OutputStream aOutputStream = null;
+	/**
+	 * Parts of the body, written by post()
+	 */
+	private List<Part> listOfPart = new ArrayList<Part>();
+
+	/**
+	 * Headers and string parameters not yet added to the parts, so that
+	 * consecutive ones are written as a single buffer
+	 */
+	private ByteArrayOutputStream aPendingBytes = new ByteArrayOutputStream();
+
+	/**
+	 * Whether the body is compressed with gzip
+	 */
+	private boolean bGzip = false;
 
 	private Map<String, String> mapOfCookie = new HashMap<String, String>();
 
@@ -46,65 +100,36 @@ public class ClientHttpRequest {
 			+ ClientHttpRequest.randomString()
 			+ ClientHttpRequest.randomString();
 
-	/**
-	 * Connects to the output stream of the URLConnection.
-	 * 
-	 * @throws IOException
-	 */
-	private void connect() throws IOException {
-		// logger.trace("connect");
-		if (null == this.aOutputStream) {
-			this.aOutputStream = this.aURLConnection.getOutputStream();
-		}
-	}
+	private final byte[] tBoundary = sBoundary.getBytes(ASCII);
 
 	/**
-	 * Writes a single character on the output stream.
+	 * Appends bytes to the pending part.
 	 * 
-	 * @param c
-	 *            The character to write.
-	 * @throws IOException
+	 * @param tByte
+	 *            The bytes to write.
 	 */
-	private void write(final char c) throws IOException {
-		this.connect();
-		logger.debug(c);
-		this.aOutputStream.write(c);
+	private void write(final byte[] tByte) {
+		this.aPendingBytes.write(tByte, 0, tByte.length);
 	}
 
 	/**
-	 * Writes a character string on the output stream.
+	 * Appends a string encoded in UTF-8 to the pending part.
 	 * 
 	 * @param s
 	 *            The string to write.
-	 * @throws IOException
 	 */
-	protected void write(final String s) throws IOException {
-		this.connect();
-		logger.debug(s);
-		this.aOutputStream.write(s.getBytes());
+	private void write(final String s) {
+		this.write(s.getBytes(UTF_8));
 	}
 
 	/**
-	 * Writes a new line on the output stream (carriage return).
-	 * 
-	 * @throws IOException
+	 * Adds the pending bytes to the parts.
 	 */
-	protected void newline() throws IOException {
-		this.connect();
-		this.write("\r\n");
-	}
-
-	/**
-	 * Writes a string and a new line on the output stream.
-	 * 
-	 * @param s
-	 *            The string to write before the new line.
-	 * @throws IOException
-	 */
-	protected void writeln(final String s) throws IOException {
-		this.connect();
-		this.write(s);
-		this.newline();
+	private void flushPending() {
+		if (this.aPendingBytes.size() > 0) {
+			this.listOfPart.add(new BytesPart(this.aPendingBytes.toByteArray()));
+			this.aPendingBytes.reset();
+		}
 	}
 
 	/**
@@ -117,13 +142,17 @@ public class ClientHttpRequest {
 	}
 
 	/**
-	 * Writes the sBoundary on the output, composed of three random strings.
+	 * Writes the boundary and the Content-Disposition of a part.
 	 * 
-	 * @throws IOException
+	 * @param sName
+	 *            The name of the parameter.
 	 */
-	private void boundary() throws IOException {
-		this.write("--");
-		this.write(this.sBoundary);
+	private void writePartStart(final String sName) {
+		this.write(DASHES);
+		this.write(this.tBoundary);
+		this.write(CRLF);
+		this.write(CONTENT_DISPOSITION);
+		this.write(sName);
 	}
 
 	/**
@@ -228,17 +257,16 @@ public class ClientHttpRequest {
 	}
 
 	/**
-	 * Writes a name in the appropriate format on the output.
+	 * Sets the Content-Encoding of the body. The body is then compressed as
+	 * it is sent, in chunks since its length is not known in advance.
 	 * 
-	 * @param sName
-	 *            The name to write.
-	 * @throws IOException
+	 * @param sEncoding
+	 *            gzip, or null for no compression
 	 */
-	private void writeName(final String sName) throws IOException {
-		this.newline();
-		this.write("Content-Disposition: form-data; name=\"");
-		this.write(sName);
-		this.write('"');
+	public void setContentEncoding(final String sEncoding) {
+		this.bGzip = "gzip".equalsIgnoreCase(sEncoding);
+		if (this.bGzip)
+			this.aURLConnection.setRequestProperty("Content-Encoding", "gzip");
 	}
 
 	/**
@@ -254,37 +282,32 @@ public class ClientHttpRequest {
 			throws IOException {
 		logger.trace("setParameter(String, String)");
 		logger.debug("Name : " + sName + ".");
-		logger.debug("Value : " + sValue + ".");
-		this.boundary();
-		this.writeName(sName);
-		this.newline();
-		this.newline();
-		this.writeln(sValue);
+		this.writePartStart(sName);
+		this.write(QUOTE_CRLF);
+		this.write(CRLF);
+		this.write(sValue);
+		this.write(CRLF);
 	}
 
 	/**
+	 * Adds a file parameter to the request.
 	 * 
+	 * @param sName
+	 *            Parameter name.
+	 * @param sFileName
+	 *            The name of the file.
 	 * @param aInputStream
-	 * @param aOutputStream
+	 *            input stream to read the contents of the file from
 	 * @throws IOException
 	 */
-	private static void pipe(final InputStream aInputStream,
-			final OutputStream aOutputStream) throws IOException {
-		byte[] tByte = new byte[500000];
-		int iNbRead;
-		int iTotal = 0;
-		synchronized (aInputStream) {
-			while ((iNbRead = aInputStream.read(tByte, 0, tByte.length)) >= 0) {
-				aOutputStream.write(tByte, 0, iNbRead);
-				iTotal += iNbRead;
-			}
-		}
-		aOutputStream.flush();
-		tByte = null;
+	public void setParameter(final String sName, final String sFileName,
+			final InputStream aInputStream, final MimeType mimeType) throws IOException {
+		this.setParameter(sName, sFileName, aInputStream, mimeType, -1);
 	}
 
 	/**
-	 * Adds a file parameter to the request.
+	 * Adds a file parameter to the request. The stream is read and closed by
+	 * post().
 	 * 
 	 * @param sName
 	 *            Parameter name.
@@ -292,32 +315,81 @@ public class ClientHttpRequest {
 	 *            The name of the file.
 	 * @param aInputStream
 	 *            input stream to read the contents of the file from
+	 * @param mimeType
+	 *            type of the file
+	 * @param lLength
+	 *            size of the file in bytes, or -1 if unknown
 	 * @throws IOException
 	 */
 	public void setParameter(final String sName, final String sFileName,
-			final InputStream aInputStream, final MimeType mimeType) throws IOException {
+			final InputStream aInputStream, final MimeType mimeType,
+			final long lLength) throws IOException {
 		logger.trace("setParameter(String, String, InputStream)");
 		logger.debug("Name : " + sName + ".");
 		logger.debug("File name : " + sFileName + ".");
-		logger.debug("InputStream : " + aInputStream + ".");
-		this.boundary();
-		this.writeName(sName);
-		this.write("; filename=\"");
+		logger.debug("Length : " + lLength + ".");
+		this.writePartStart(sName);
+		this.write(FILENAME);
 		this.write(sFileName);
-		this.write('"');
-		this.newline();
-//		String sType = URLConnection.guessContentTypeFromName(sFileName);
-//		if (sType == null) {
-//			sType = URLConnection.guessContentTypeFromStream(aInputStream);
-//			if (sType == null) {
-//				sType = "application/octet-stream";
-//			}
-//		}
-		this.write("Content-Type: ");
-		this.writeln(mimeType.toString());
-		this.newline();
-		ClientHttpRequest.pipe(aInputStream, this.aOutputStream);
-		this.newline();
+		this.write(CONTENT_TYPE);
+		this.write(mimeType.toString());
+		this.write(CRLF);
+		this.write(CRLF);
+		this.flushPending();
+		this.listOfPart.add(new StreamPart(aInputStream, lLength));
+		this.write(CRLF);
+	}
+
+	/**
+	 * Adds a file parameter to the request. The file is read from disk when
+	 * the body is sent, through the pooled buffer of the request, instead of
+	 * being read into memory beforehand.
+	 * 
+	 * @param sName
+	 *            Parameter name.
+	 * @param sFileName
+	 *            The name of the file sent to the server.
+	 * @param aFile
+	 *            The file to upload.
+	 * @param mimeType
+	 *            type of the file
+	 * @throws IOException
+	 */
+	public void setParameter(final String sName, final String sFileName,
+			final File aFile, final MimeType mimeType) throws IOException {
+		logger.trace("setParameter(String, String, File)");
+		logger.debug("Name : " + sName + ".");
+		logger.debug("File : " + aFile + ".");
+		this.writePartStart(sName);
+		this.write(FILENAME);
+		this.write(sFileName);
+		this.write(CONTENT_TYPE);
+		this.write(mimeType.toString());
+		this.write(CRLF);
+		this.write(CRLF);
+		this.flushPending();
+		this.listOfPart.add(new FilePart(aFile));
+		this.write(CRLF);
+	}
+
+	/**
+	 * Adds a file parameter to the request.
+	 * 
+	 * @param sName
+	 *            Parameter name.
+	 * @param aFile
+	 *            The file to upload.
+	 * @throws IOException
+	 */
+	public void setParameter(final String sName, final File aFile)
+			throws IOException {
+		String sType = URLConnection.guessContentTypeFromName(aFile.getName());
+		try {
+			this.setParameter(sName, aFile.getName(), aFile,
+					new MimeType(sType == null ? "application/octet-stream" : sType));
+		} catch (MimeTypeParseException e) {
+			throw new IOException(e.getMessage());
+		}
 	}
 
 	/**
@@ -382,6 +454,13 @@ public class ClientHttpRequest {
 		}
 	}
 
+	/**
+	 * @return the connection used to post the request
+	 */
+	public HttpURLConnection getURLConnection() {
+		return aURLConnection;
+	}
+
 	/**
 	 * posts the requests to the server, with all the cookies and parameters
 	 * that were added
@@ -390,9 +469,53 @@ public class ClientHttpRequest {
 	 * @throws IOException
 	 */
 	public InputStream post() throws IOException {
-		this.boundary();
-		this.writeln("--");
-		this.aOutputStream.close();
+		this.write(DASHES);
+		this.write(this.tBoundary);
+		this.write(DASHES);
+		this.write(CRLF);
+		this.flushPending();
+
+		long lLength = this.bGzip ? -1 : 0;
+		for (final Part aPart : this.listOfPart) {
+			if (lLength < 0 || aPart.length() < 0) {
+				lLength = -1;
+				break;
+			}
+			lLength += aPart.length();
+		}
+		if (lLength >= 0)
+			this.aURLConnection.setFixedLengthStreamingMode(lLength);
+		else
+			this.aURLConnection.setChunkedStreamingMode(BUFFER_SIZE);
+		logger.debug("Content length : " + lLength + ".");
+
+		if (!this.mapOfCookie.isEmpty()) {
+			final StringBuilder aCookie = new StringBuilder();
+			for (final Map.Entry<String, String> entry : this.mapOfCookie.entrySet()) {
+				if (aCookie.length() > 0)
+					aCookie.append("; ");
+				aCookie.append(entry.getKey()).append('=').append(entry.getValue());
+			}
+			this.aURLConnection.setRequestProperty("Cookie", aCookie.toString());
+		}
+
+		byte[] tByte = bufferPool.poll();
+		if (tByte == null)
+			tByte = new byte[BUFFER_SIZE];
+		try {
+			OutputStream aOutputStream = this.aURLConnection.getOutputStream();
+			if (this.bGzip)
+				aOutputStream = new GZIPOutputStream(aOutputStream, BUFFER_SIZE);
+			try {
+				for (final Part aPart : this.listOfPart)
+					aPart.writeTo(aOutputStream, tByte);
+			} finally {
+				aOutputStream.close();
+			}
+		} finally {
+			bufferPool.offer(tByte);
+			this.listOfPart.clear();
+		}
 
 		return this.aURLConnection.getInputStream();
 	}
@@ -729,4 +852,114 @@ public class ClientHttpRequest {
 		return new ClientHttpRequest(aURL).post(sName1, oValue1, sName2,
 				oValue2, sName3, oValue3, sName4, oValue4);
 	}
+	/**
+	 * A part of the body
+	 */
+	private static abstract class Part {
+
+		/**
+		 * @return the number of bytes of the part, or -1 if unknown
+		 */
+		abstract long length();
+
+		abstract void writeTo(OutputStream aOutputStream, byte[] tByte) throws IOException;
+	}
+
+	/**
+	 * Headers and string parameters, encoded beforehand
+	 */
+	private static class BytesPart extends Part {
+
+		private final byte[] tContent;
+
+		BytesPart(final byte[] tContent) {
+			this.tContent = tContent;
+		}
+
+		@Override
+		long length() {
+			return this.tContent.length;
+		}
+
+		@Override
+		void writeTo(final OutputStream aOutputStream, final byte[] tByte) throws IOException {
+			aOutputStream.write(this.tContent);
+		}
+	}
+
+	/**
+	 * Content of a file, copied from its stream when the body is sent
+	 */
+	private static class StreamPart extends Part {
+
+		private final InputStream aInputStream;
+
+		private final long lLength;
+
+		StreamPart(final InputStream aInputStream, final long lLength) {
+			this.aInputStream = aInputStream;
+			this.lLength = lLength;
+		}
+
+		@Override
+		long length() {
+			return this.lLength;
+		}
+
+		@Override
+		void writeTo(final OutputStream aOutputStream, final byte[] tByte) throws IOException {
+			long lTotal = 0;
+			try {
+				int iNbRead;
+				while ((iNbRead = this.aInputStream.read(tByte, 0, tByte.length)) >= 0) {
+					aOutputStream.write(tByte, 0, iNbRead);
+					lTotal += iNbRead;
+				}
+			} finally {
+				this.aInputStream.close();
+			}
+			if (this.lLength >= 0 && lTotal != this.lLength)
+				throw new IOException("Expected " + this.lLength + " bytes but read " + lTotal);
+		}
+	}
+
+	/**
+	 * Content of a file, read from disk when the body is sent
+	 */
+	private static class FilePart extends Part {
+
+		private final File aFile;
+
+		private final long lLength;
+
+		FilePart(final File aFile) {
+			this.aFile = aFile;
+			this.lLength = aFile.length();
+		}
+
+		@Override
+		long length() {
+			return this.lLength;
+		}
+
+		@Override
+		void writeTo(final OutputStream aOutputStream, final byte[] tByte) throws IOException {
+			final FileInputStream aFileInputStream = new FileInputStream(this.aFile);
+			long lPosition = 0;
+			try {
+				while (lPosition < this.lLength) {
+					final int iNbRead = aFileInputStream.read(tByte, 0, (int) Math.min(tByte.length, this.lLength - lPosition));
+					if (iNbRead < 0)
+						break;
+					aOutputStream.write(tByte, 0, iNbRead);
+					lPosition += iNbRead;
+				}
+			} finally {
+				aFileInputStream.close();
+			}
+			if (lPosition != this.lLength)
+				throw new IOException("Expected " + this.lLength + " bytes but read " + lPosition + " from " + this.aFile);
+		}
+	}
+
 }
@@ -0,0 +1,162 @@
+// (c) COPYRIGHT MIT, ERCIM and Keio, 2010.
+// Please first read the full copyright statement in file COPYRIGHT.html
+package org.w3c.unicorn.util;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import javax.activation.MimeType;
+
+/**
+ * Builds a multipart/form-data body for the HttpClient transport. It writes
+ * the same parts as ClientHttpRequest, but files are streamed by the client
+ * when the body is sent instead of being copied to a connection beforehand.
+ */
+public class MultipartBodyPublisher {
+
+	private static Random aRandom = new Random();
+
+	private final String sBoundary = "---------------------------"
+			+ Long.toString(aRandom.nextLong(), 36)
+			+ Long.toString(aRandom.nextLong(), 36)
+			+ Long.toString(aRandom.nextLong(), 36);
+
+	private final List<BodyPublisher> parts = new ArrayList<BodyPublisher>();
+
+	/**
+	 * Text not yet added to the parts, so that consecutive headers and string
+	 * parameters are sent as a single buffer
+	 */
+	private final StringBuilder pending = new StringBuilder();
+
+	/**
+	 * @return the value of the Content-Type header of the request
+	 */
+	public String getContentType() {
+		return "multipart/form-data; boundary=" + sBoundary;
+	}
+
+	/**
+	 * Adds a string parameter to the body.
+	 *
+	 * @param sName
+	 *            Parameter name.
+	 * @param sValue
+	 *            Parameter value.
+	 */
+	public MultipartBodyPublisher addParameter(final String sName, final String sValue) {
+		pending.append("--").append(sBoundary).append("\r\n");
+		pending.append("Content-Disposition: form-data; name=\"").append(sName).append("\"\r\n\r\n");
+		pending.append(sValue).append("\r\n");
+		return this;
+	}
+
+	/**
+	 * Adds string parameters to the body.
+	 *
+	 * @param mapOfParameter
+	 *            "name-to-value" map of parameters
+	 */
+	public MultipartBodyPublisher addParameters(final Map<String, String> mapOfParameter) {
+		for (Map.Entry<String, String> entry : mapOfParameter.entrySet())
+			addParameter(entry.getKey(), entry.getValue());
+		return this;
+	}
+
+	/**
+	 * Adds a file parameter to the body. The file is read when the body is
+	 * sent.
+	 *
+	 * @param sName
+	 *            Parameter name.
+	 * @param sFileName
+	 *            The name of the file.
+	 * @param streamSupplier
+	 *            supplies the stream to read the contents of the file from
+	 * @param mimeType
+	 *            type of the file
+	 */
+	public MultipartBodyPublisher addFile(final String sName, final String sFileName,
+			final Supplier<InputStream> streamSupplier, final MimeType mimeType) {
+		writeFileHeader(sName, sFileName, mimeType);
+		parts.add(BodyPublishers.ofInputStream(streamSupplier));
+		pending.append("\r\n");
+		return this;
+	}
+
+	/**
+	 * Adds a file parameter to the body. The file is read by the client
+	 * when the body is sent.
+	 *
+	 * @param sName
+	 *            Parameter name.
+	 * @param sFileName
+	 *            The name of the file sent to the server.
+	 * @param aFile
+	 *            The file to upload.
+	 * @param mimeType
+	 *            type of the file
+	 * @throws FileNotFoundException
+	 *             if the file does not exist
+	 */
+	public MultipartBodyPublisher addFile(final String sName, final String sFileName,
+			final File aFile, final MimeType mimeType) throws FileNotFoundException {
+		writeFileHeader(sName, sFileName, mimeType);
+		parts.add(BodyPublishers.ofFile(aFile.toPath()));
+		pending.append("\r\n");
+		return this;
+	}
+
+	/**
+	 * @return the publisher of the whole body
+	 */
+	public BodyPublisher build() {
+		pending.append("--").append(sBoundary).append("--\r\n");
+		flush();
+		return BodyPublishers.concat(parts.toArray(new BodyPublisher[parts.size()]));
+	}
+
+	private void writeFileHeader(final String sName, final String sFileName, final MimeType mimeType) {
+		pending.append("--").append(sBoundary).append("\r\n");
+		pending.append("Content-Disposition: form-data; name=\"").append(sName)
+			.append("\"; filename=\"").append(sFileName).append("\"\r\n");
+		pending.append("Content-Type: ").append(mimeType.toString()).append("\r\n\r\n");
+		flush();
+	}
+
+	private void flush() {
+		if (pending.length() > 0) {
+			parts.add(BodyPublishers.ofByteArray(pending.toString().getBytes(StandardCharsets.UTF_8)));
+			pending.setLength(0);
+		}
+	}
+
+	/**
+	 * Wraps a stream opener whose IOException is rethrown unchecked, as
+	 * required by BodyPublishers.ofInputStream.
+	 */
+	public static abstract class StreamSupplier implements Supplier<InputStream> {
+
+		public InputStream get() {
+			try {
+				return open();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		protected abstract InputStream open() throws IOException;
+	}
+
+}
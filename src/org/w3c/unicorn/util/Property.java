@@ -29,4 +29,32 @@ public class Property {
 	public static Properties getProps(String fileName) {
 		return Framework.getUnicornPropertiesFiles().get(fileName);
 	}
+	
+	/**
+	 * Parses a duration such as "8s", "500ms" or "2m". A value without unit
+	 * is a number of milliseconds.
+	 * 
+	 * @param value
+	 *            the duration to parse
+	 * @return the duration in milliseconds
+	 * @throws NumberFormatException
+	 *             if the value is not a valid duration
+	 */
+	public static long parseDuration(String value) throws NumberFormatException {
+		String s = value.trim().toLowerCase();
+		long factor = 1;
+		if (s.endsWith("ms")) {
+			s = s.substring(0, s.length() - 2);
+		} else if (s.endsWith("s")) {
+			s = s.substring(0, s.length() - 1);
+			factor = 1000;
+		} else if (s.endsWith("m")) {
+			s = s.substring(0, s.length() - 1);
+			factor = 60000;
+		}
+		long duration = Long.parseLong(s.trim()) * factor;
+		if (duration < 0)
+			throw new NumberFormatException("Negative duration: " + value);
+		return duration;
+	}
 }